@@ -22,22 +22,27 @@ import dagger.hilt.EntryPoints
 import dagger.hilt.InstallIn
 import dagger.hilt.android.HiltAndroidApp
 import dagger.hilt.components.SingletonComponent
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
 import mil.nga.giat.mage.data.datasource.observation.AttachmentLocalDataSource
 import mil.nga.giat.mage.data.repository.layer.LayerRepository
 import mil.nga.giat.mage.data.repository.user.UserRepository
+import mil.nga.giat.mage.data.repository.user.UserResolver
 import mil.nga.giat.mage.di.TokenProvider
-import mil.nga.giat.mage.feed.FeedFetchService
-import mil.nga.giat.mage.location.LocationFetchService
+import mil.nga.giat.mage.glide.MarkerIconCache
 import mil.nga.giat.mage.location.LocationReportingService
 import mil.nga.giat.mage.login.AccountStateActivity
 import mil.nga.giat.mage.login.LoginActivity
 import mil.nga.giat.mage.login.SignupActivity
 import mil.nga.giat.mage.login.idp.IdpLoginActivity
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
+import mil.nga.giat.mage.network.GzipRequestInterceptor
+import mil.nga.giat.mage.network.HttpCache
 import mil.nga.giat.mage.network.Server
 import mil.nga.giat.mage.observation.ObservationNotificationListener
 import mil.nga.giat.mage.observation.sync.AttachmentSyncListener
 import mil.nga.giat.mage.observation.sync.AttachmentSyncWorker
-import mil.nga.giat.mage.observation.sync.ObservationFetchService
 import mil.nga.giat.mage.observation.sync.ObservationFetchWorker
 import mil.nga.giat.mage.observation.sync.ObservationSyncListener
 import mil.nga.giat.mage.observation.sync.ObservationSyncWorker
@@ -45,6 +50,7 @@ import mil.nga.giat.mage.data.datasource.observation.ObservationLocalDataSource
 import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
 import mil.nga.giat.mage.di.TokenStatus
 import mil.nga.giat.mage.login.ServerUrlActivity
+import mil.nga.giat.mage.sync.SyncOrchestrator
 import javax.inject.Inject
 
 @HiltAndroidApp
@@ -75,6 +81,12 @@ class MageApplication : Application(),
    @Inject lateinit var userLocalDataSource: UserLocalDataSource
    @Inject lateinit var observationLocalDataSource: ObservationLocalDataSource
    @Inject lateinit var attachmentLocalDataSource: AttachmentLocalDataSource
+   @Inject lateinit var conditionalRequestInterceptor: ConditionalRequestInterceptor
+   @Inject lateinit var gzipRequestInterceptor: GzipRequestInterceptor
+   @Inject lateinit var httpCache: HttpCache
+   @Inject lateinit var userResolver: UserResolver
+   @Inject lateinit var syncOrchestrator: SyncOrchestrator
+   @Inject lateinit var markerIconCache: MarkerIconCache
 
    @EntryPoint
    @InstallIn(SingletonComponent::class)
@@ -129,6 +141,9 @@ class MageApplication : Application(),
          observationNotificationListener = listener
       }
 
+      // Local data may have been reset, make sure the first poll is unconditional
+      conditionalRequestInterceptor.clear()
+
       // Start fetching observations and locations
       startFetching()
       ObservationFetchWorker.beginWork(applicationContext)
@@ -144,6 +159,10 @@ class MageApplication : Application(),
       destroyFetching()
       destroyNotification()
       stopLocationService()
+      conditionalRequestInterceptor.clear()
+      gzipRequestInterceptor.clear()
+      userResolver.clear()
+      CoroutineScope(Dispatchers.IO).launch { httpCache.evictApi() }
       ObservationFetchWorker.stopWork(applicationContext)
 
       if (clearTokenInformationAndSendLogoutRequest) {
@@ -165,18 +184,14 @@ class MageApplication : Application(),
    }
 
    private fun startFetching() {
-      startService(Intent(applicationContext, LocationFetchService::class.java))
-      startService(Intent(applicationContext, ObservationFetchService::class.java))
-      startService(Intent(applicationContext, FeedFetchService::class.java))
+      syncOrchestrator.start()
    }
 
    /**
     * Stop Tasks responsible for fetching Observations and Locations from the server.
     */
    private fun destroyFetching() {
-      stopService(Intent(applicationContext, LocationFetchService::class.java))
-      stopService(Intent(applicationContext, ObservationFetchService::class.java))
-      stopService(Intent(applicationContext, FeedFetchService::class.java))
+      syncOrchestrator.stop()
    }
 
    fun startLocationService() {
@@ -189,6 +204,11 @@ class MageApplication : Application(),
       stopService(intent)
    }
 
+   override fun onTrimMemory(level: Int) {
+      super.onTrimMemory(level)
+      markerIconCache.onTrimMemory(level)
+   }
+
    override fun onSharedPreferenceChanged(sharedPreferences: SharedPreferences?, key: String?) {
       if (getString(R.string.reportLocationKey).equals(key, ignoreCase = true) && !tokenProvider.isExpired()) {
          val reportLocation = sharedPreferences?.getBoolean(
@@ -52,31 +52,54 @@ class FeatureLocalDataSource @Inject constructor(
    @Throws(StaticFeatureException::class)
    fun createAll(staticFeatures: Collection<StaticFeature>, pLayer: Layer): Layer {
       try {
-         TransactionManager.callInTransaction<Void>(daoStore.connectionSource) {
-            for (staticFeature2 in staticFeatures) {
+         createBatch(staticFeatures)
+      } catch (e: StaticFeatureException) {
+         Log.e(LOG_NAME, "There was a problem creating static features.", e)
+      }
+      return setLoaded(pLayer)
+   }
+
+   /**
+    * Create features in a single transaction without notifying listeners. Large layers are
+    * written as a series of batches followed by [setLoaded].
+    *
+    * @return number of features created
+    * @throws StaticFeatureException
+    */
+   @Throws(StaticFeatureException::class)
+   fun createBatch(staticFeatures: Collection<StaticFeature>): Int {
+      return try {
+         TransactionManager.callInTransaction(daoStore.connectionSource) {
+            var created = 0
+            for (staticFeature in staticFeatures) {
                try {
-                  val properties = staticFeature2.properties
-                  val newStaticFeature = featureDao.createIfNotExists(staticFeature2)
-
-                  if (properties != null) {
-                     for (property in properties) {
-                        property.staticFeature = newStaticFeature
-                        featurePropertyDao.create(property)
-                     }
+                  val properties = staticFeature.properties
+                  val newStaticFeature = featureDao.createIfNotExists(staticFeature)
+
+                  if (properties != null && properties.isNotEmpty()) {
+                     properties.forEach { it.staticFeature = newStaticFeature }
+                     featurePropertyDao.create(properties)
                   }
+                  created++
                } catch (e: SQLException) {
-                  Log.e(LOG_NAME, "There was a problem creating the static feature: $staticFeature2.", e)
-                  continue
+                  Log.e(LOG_NAME, "There was a problem creating the static feature: $staticFeature.", e)
                }
             }
-            null
-         }
-         pLayer.isLoaded = true
-         for (listener in listeners) {
-            listener.onStaticFeaturesCreated(pLayer)
+            created
          }
       } catch (e: SQLException) {
          Log.e(LOG_NAME, "There was a problem creating static features.", e)
+         throw StaticFeatureException("There was a problem creating static features.", e)
+      }
+   }
+
+   /**
+    * Mark the layer as loaded and notify listeners that its features were created.
+    */
+   fun setLoaded(pLayer: Layer): Layer {
+      pLayer.isLoaded = true
+      for (listener in listeners) {
+         listener.onStaticFeaturesCreated(pLayer)
       }
       return pLayer
    }
@@ -124,6 +147,30 @@ class FeatureLocalDataSource @Inject constructor(
       return staticFeatures
    }
 
+   /**
+    * Read a page of the layer's features in id order.
+    *
+    * @param afterId only features with an id greater than this are read, the id of the last
+    * feature of the previous page
+    * @param limit maximum number of features to read
+    */
+   @Throws(StaticFeatureException::class)
+   fun readPage(layerId: Long, afterId: Long, limit: Long): List<StaticFeature> {
+      return try {
+         featureDao.queryBuilder()
+            .orderBy(StaticFeature.STATIC_FEATURE_ID, true)
+            .limit(limit)
+            .where()
+            .eq(StaticFeature.STATIC_FEATURE_LAYER_ID, layerId)
+            .and()
+            .gt(StaticFeature.STATIC_FEATURE_ID, afterId)
+            .query()
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to query for features with layer id: $layerId after id: $afterId", e)
+         throw StaticFeatureException("Unable to query for features with layer id: $layerId after id: $afterId", e)
+      }
+   }
+
    @Throws(StaticFeatureException::class)
    fun readFeature(layerId: Long, id: Long): StaticFeature? {
       return try {
@@ -142,26 +189,24 @@ class FeatureLocalDataSource @Inject constructor(
 
    @Throws(StaticFeatureException::class)
    fun deleteAll(layerId: Long) {
-      val features = readAll(layerId)
-      val ids: MutableCollection<Long?> = ArrayList(features.size)
-      for (feature in features) {
-         ids.add(feature.id)
-      }
       try {
          // Delete the properties (children)
+         val featureQuery = featureDao.queryBuilder()
+         featureQuery.selectColumns(StaticFeature.STATIC_FEATURE_ID)
+         featureQuery.where().eq(StaticFeature.STATIC_FEATURE_LAYER_ID, layerId)
          val propertyDeleteBuilder = featurePropertyDao.deleteBuilder()
-         propertyDeleteBuilder.where().`in`(StaticFeatureProperty.STATIC_FEATURE_ID, ids)
+         propertyDeleteBuilder.where().`in`(StaticFeatureProperty.STATIC_FEATURE_ID, featureQuery)
          val propertiesDeleted = featurePropertyDao.delete(propertyDeleteBuilder.prepare())
          Log.i(LOG_NAME, "$propertiesDeleted static feature properties deleted")
 
          // All children deleted, delete the static feature.
          val featureDeleteBuilder = featureDao.deleteBuilder()
          featureDeleteBuilder.where().eq(StaticFeature.STATIC_FEATURE_LAYER_ID, layerId)
-         featureDao.delete(featureDeleteBuilder.prepare())
-         Log.i(LOG_NAME, "$featureDeleteBuilder features deleted")
+         val featuresDeleted = featureDao.delete(featureDeleteBuilder.prepare())
+         Log.i(LOG_NAME, "$featuresDeleted features deleted")
       } catch (e: SQLException) {
-         Log.e(LOG_NAME, "Unable to delete Static Feature: $ids", e)
-         throw StaticFeatureException("Unable to delete Static Feature: $ids", e)
+         Log.e(LOG_NAME, "Unable to delete static features for layer: $layerId", e)
+         throw StaticFeatureException("Unable to delete static features for layer: $layerId", e)
       }
    }
 
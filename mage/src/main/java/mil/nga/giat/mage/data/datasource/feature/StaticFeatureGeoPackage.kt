@@ -0,0 +1,309 @@
+package mil.nga.giat.mage.data.datasource.feature
+
+import android.app.Application
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Log
+import androidx.core.content.ContextCompat
+import androidx.core.graphics.alpha
+import androidx.core.graphics.blue
+import androidx.core.graphics.drawable.toBitmap
+import androidx.core.graphics.green
+import androidx.core.graphics.red
+import mil.nga.color.Color
+import mil.nga.geopackage.BoundingBox
+import mil.nga.geopackage.GeoPackage
+import mil.nga.geopackage.GeoPackageFactory
+import mil.nga.geopackage.db.GeoPackageDataType
+import mil.nga.geopackage.db.TableColumnKey
+import mil.nga.geopackage.extension.nga.style.FeatureTableStyles
+import mil.nga.geopackage.extension.nga.style.IconRow
+import mil.nga.geopackage.extension.nga.style.StyleRow
+import mil.nga.geopackage.features.columns.GeometryColumns
+import mil.nga.geopackage.features.index.FeatureIndexManager
+import mil.nga.geopackage.features.index.FeatureIndexType
+import mil.nga.geopackage.features.user.FeatureColumn
+import mil.nga.geopackage.features.user.FeatureRow
+import mil.nga.geopackage.features.user.FeatureTableMetadata
+import mil.nga.geopackage.geom.GeoPackageGeometryData
+import mil.nga.giat.mage.R
+import mil.nga.giat.mage.database.model.geojson.StaticFeature
+import mil.nga.giat.mage.database.model.layer.Layer
+import mil.nga.giat.mage.map.annotation.ShapeStyle
+import mil.nga.giat.mage.sdk.exceptions.StaticFeatureException
+import mil.nga.proj.ProjectionConstants
+import mil.nga.sf.GeometryType
+import mil.nga.sf.util.GeometryEnvelopeBuilder
+import java.io.ByteArrayOutputStream
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Internal GeoPackage copy of the static feature layers.
+ *
+ * Each loaded layer is written to its own GeoPackage feature table, styled with the feature style
+ * extension and indexed, so static layers are drawn and queried by the same feature tiles that
+ * draw GeoPackage layers. Rows reference the static feature they were created from.
+ */
+@Singleton
+class StaticFeatureGeoPackage @Inject constructor(
+   private val application: Application,
+   private val featureLocalDataSource: FeatureLocalDataSource
+) {
+   private val manager = GeoPackageFactory.getManager(application)
+
+   private val defaultIcon: ByteArray by lazy {
+      val drawable = ContextCompat.getDrawable(application, R.drawable.default_marker)!!
+      ByteArrayOutputStream().use { output ->
+         drawable.toBitmap().compress(Bitmap.CompressFormat.PNG, 100, output)
+         output.toByteArray()
+      }
+   }
+
+   /**
+    * True when the layer has a GeoPackage that finished loading and indexing.
+    */
+   fun isIndexed(layer: Layer): Boolean {
+      val name = name(layer.id)
+      if (!manager.exists(name)) return false
+
+      var indexed = false
+      try {
+         open(name) { geoPackage ->
+            if (geoPackage.isFeatureTable(TABLE_NAME)) {
+               val indexer = FeatureIndexManager(application, geoPackage, TABLE_NAME)
+               indexed = indexer.isIndexed
+               indexer.close()
+            }
+         }
+      } catch (e: Exception) {
+         Log.w(LOG_NAME, "Error reading the static feature GeoPackage for layer: ${layer.name}", e)
+      }
+
+      return indexed
+   }
+
+   /**
+    * Create an empty feature table for the layer, replacing any existing GeoPackage.
+    *
+    * @throws StaticFeatureException
+    */
+   @Throws(StaticFeatureException::class)
+   fun create(layer: Layer) {
+      val name = name(layer.id)
+      try {
+         manager.delete(name)
+         manager.create(name)
+
+         open(name) { geoPackage ->
+            val srs = geoPackage.spatialReferenceSystemDao.getOrCreateCode(
+               ProjectionConstants.AUTHORITY_EPSG,
+               ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM.toLong()
+            )
+
+            val geometryColumns = GeometryColumns()
+            geometryColumns.id = TableColumnKey(TABLE_NAME, GEOMETRY_COLUMN)
+            geometryColumns.geometryType = GeometryType.GEOMETRY
+            geometryColumns.z = 0
+            geometryColumns.m = 0
+            geometryColumns.srsId = srs.id
+
+            val columns = listOf(FeatureColumn.createColumn(STATIC_FEATURE_ID_COLUMN, GeoPackageDataType.INTEGER))
+            geoPackage.createFeatureTable(FeatureTableMetadata.create(geometryColumns, columns, BoundingBox()))
+         }
+      } catch (e: Exception) {
+         Log.e(LOG_NAME, "There was a problem creating the static feature GeoPackage for layer: ${layer.name}", e)
+         throw StaticFeatureException("There was a problem creating the static feature GeoPackage for layer: ${layer.name}", e)
+      }
+   }
+
+   /**
+    * Write features that were already created locally, in a single transaction.
+    *
+    * @throws StaticFeatureException
+    */
+   @Throws(StaticFeatureException::class)
+   fun insert(layer: Layer, features: Collection<StaticFeature>) {
+      try {
+         open(name(layer.id)) { geoPackage ->
+            val featureDao = geoPackage.getFeatureDao(TABLE_NAME)
+            val styles = FeatureTableStyles(geoPackage, featureDao.table)
+            val styleRows = mutableMapOf<Triple<Int, Int, Double>, StyleRow>()
+            val iconRows = mutableMapOf<String?, IconRow>()
+
+            geoPackage.beginTransaction()
+            var successful = false
+            try {
+               features.forEach { feature ->
+                  // features that could not be created locally have no id to reference
+                  val id = feature.id ?: return@forEach
+                  val geometry = feature.geometry ?: return@forEach
+
+                  val geometryData = GeoPackageGeometryData(featureDao.geometryColumns.srsId)
+                  geometryData.setGeometry(geometry)
+                  geometryData.setEnvelope(GeometryEnvelopeBuilder.buildEnvelope(geometry))
+
+                  val row = featureDao.newRow()
+                  row.geometry = geometryData
+                  row.setValue(STATIC_FEATURE_ID_COLUMN, id)
+                  featureDao.create(row)
+
+                  setStyle(styles, row, feature, styleRows, iconRows)
+               }
+               successful = true
+            } finally {
+               geoPackage.endTransaction(successful)
+            }
+         }
+      } catch (e: Exception) {
+         Log.e(LOG_NAME, "There was a problem writing static features to the GeoPackage for layer: ${layer.name}", e)
+         throw StaticFeatureException("There was a problem writing static features to the GeoPackage for layer: ${layer.name}", e)
+      }
+   }
+
+   /**
+    * Build the feature index used to query features by tile and by map click.
+    *
+    * @throws StaticFeatureException
+    */
+   @Throws(StaticFeatureException::class)
+   fun index(layer: Layer) {
+      try {
+         open(name(layer.id)) { geoPackage ->
+            val indexer = FeatureIndexManager(application, geoPackage, TABLE_NAME)
+            try {
+               indexer.indexLocation = FeatureIndexType.GEOPACKAGE
+               val count = indexer.index()
+               Log.i(LOG_NAME, "Indexed $count static features for layer ${layer.name}")
+            } finally {
+               indexer.close()
+            }
+         }
+      } catch (e: Exception) {
+         Log.e(LOG_NAME, "There was a problem indexing the static feature GeoPackage for layer: ${layer.name}", e)
+         throw StaticFeatureException("There was a problem indexing the static feature GeoPackage for layer: ${layer.name}", e)
+      }
+   }
+
+   /**
+    * Build the GeoPackage from the local static features, used for layers that were loaded
+    * before static features were stored as GeoPackages.
+    *
+    * @throws StaticFeatureException
+    */
+   @Throws(StaticFeatureException::class)
+   fun rebuild(layer: Layer) {
+      create(layer)
+
+      // page through the features so large layers are never fully in memory
+      var afterId = 0L
+      do {
+         val features = featureLocalDataSource.readPage(layer.id, afterId, BATCH_SIZE.toLong())
+         if (features.isNotEmpty()) {
+            insert(layer, features)
+            afterId = features.last().id
+         }
+      } while (features.size == BATCH_SIZE)
+
+      index(layer)
+   }
+
+   fun delete(layerId: Long) {
+      manager.delete(name(layerId))
+   }
+
+   fun deleteAll() {
+      manager.databases()
+         .filter { it.startsWith(NAME_PREFIX) }
+         .forEach { manager.delete(it) }
+   }
+
+   private fun setStyle(
+      styles: FeatureTableStyles,
+      row: FeatureRow,
+      feature: StaticFeature,
+      styleRows: MutableMap<Triple<Int, Int, Double>, StyleRow>,
+      iconRows: MutableMap<String?, IconRow>
+   ) {
+      when (row.geometryType) {
+         GeometryType.POINT, GeometryType.MULTIPOINT -> {
+            val icon = iconRows.getOrPut(feature.localPath) { iconRow(feature.localPath) }
+            styles.setIcon(row, icon)
+         }
+         else -> {
+            // shape style widths are screen pixels, feature tiles multiply by the density themselves
+            val shapeStyle = ShapeStyle.fromStaticFeature(feature, application)
+            val width = shapeStyle.strokeWidth.toDouble() / application.resources.displayMetrics.density
+            val style = styleRows.getOrPut(Triple(shapeStyle.strokeColor, shapeStyle.fillColor, width)) {
+               StyleRow().apply {
+                  color = color(shapeStyle.strokeColor)
+                  fillColor = color(shapeStyle.fillColor)
+                  this.width = width
+               }
+            }
+            styles.setStyle(row, style)
+         }
+      }
+   }
+
+   private fun iconRow(path: String?): IconRow {
+      val bytes = path?.let {
+         try {
+            BitmapFactory.decodeFile(path)?.let { bitmap ->
+               ByteArrayOutputStream().use { output ->
+                  bitmap.compress(Bitmap.CompressFormat.PNG, 100, output)
+                  output.toByteArray()
+               }
+            }
+         } catch (e: Exception) {
+            Log.w(LOG_NAME, "Error decoding static feature icon $path", e)
+            null
+         }
+      } ?: defaultIcon
+
+      val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+      BitmapFactory.decodeByteArray(bytes, 0, bytes.size, bounds)
+      val ratio = ICON_DIMENSION / maxOf(bounds.outWidth, bounds.outHeight, 1)
+
+      // icons are anchored at their bottom center
+      return IconRow().apply {
+         data = bytes
+         contentType = "image/png"
+         width = bounds.outWidth * ratio
+         height = bounds.outHeight * ratio
+         anchorU = 0.5
+         anchorV = 1.0
+      }
+   }
+
+   private fun color(argb: Int): Color {
+      return Color(argb.red, argb.green, argb.blue, argb.alpha)
+   }
+
+   private fun open(name: String, block: (GeoPackage) -> Unit) {
+      val geoPackage = manager.open(name)
+      try {
+         block(geoPackage)
+      } finally {
+         geoPackage.close()
+      }
+   }
+
+   companion object {
+      private val LOG_NAME = StaticFeatureGeoPackage::class.java.name
+
+      private const val NAME_PREFIX = "mage_static_layer_"
+      private const val GEOMETRY_COLUMN = "geometry"
+      private const val BATCH_SIZE = 500
+      private const val ICON_DIMENSION = 32.0
+
+      const val TABLE_NAME = "features"
+      const val STATIC_FEATURE_ID_COLUMN = "static_feature_id"
+
+      fun name(layerId: Long) = "$NAME_PREFIX$layerId"
+
+      fun staticFeatureId(row: FeatureRow): Long? {
+         return (row.getValue(STATIC_FEATURE_ID_COLUMN) as? Number)?.toLong()
+      }
+   }
+}
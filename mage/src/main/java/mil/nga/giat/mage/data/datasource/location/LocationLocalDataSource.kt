@@ -7,7 +7,6 @@ import com.j256.ormlite.stmt.Where
 import mil.nga.giat.mage.database.dao.MageSqliteOpenHelper
 import mil.nga.giat.mage.database.model.event.Event
 import mil.nga.giat.mage.database.model.location.Location
-import mil.nga.giat.mage.database.model.location.LocationProperty
 import mil.nga.giat.mage.database.model.user.User
 import mil.nga.giat.mage.filter.Filter
 import mil.nga.giat.mage.sdk.Temporal
@@ -15,6 +14,7 @@ import mil.nga.giat.mage.sdk.event.IEventDispatcher
 import mil.nga.giat.mage.sdk.event.ILocationEventListener
 import mil.nga.giat.mage.sdk.exceptions.LocationException
 import java.sql.SQLException
+import java.util.Date
 import java.util.concurrent.CopyOnWriteArrayList
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -27,8 +27,7 @@ import javax.inject.Singleton
 @Singleton
 class LocationLocalDataSource @Inject constructor(
    private val daoStore: MageSqliteOpenHelper,
-   private val locationDao: Dao<Location, Long>,
-   private val locationPropertyDao: Dao<LocationProperty, Long>
+   private val locationDao: Dao<Location, Long>
 ) : IEventDispatcher<ILocationEventListener> {
    private val listeners: MutableCollection<ILocationEventListener> = CopyOnWriteArrayList()
 
@@ -36,25 +35,16 @@ class LocationLocalDataSource @Inject constructor(
    @Throws(LocationException::class)
    fun create(pLocation: Location): Location {
       val createdLocation: Location = try {
-         TransactionManager.callInTransaction(daoStore.connectionSource) { // create Location geometry.
-            val createdLocation = locationDao.createIfNotExists(pLocation)
-            // create Location properties.
-            val locationProperties: Collection<LocationProperty>? = pLocation.properties
-            if (locationProperties != null) {
-               for (locationProperty in locationProperties) {
-                  locationProperty.setLocation(createdLocation)
-                  locationPropertyDao.create(locationProperty)
-               }
-            }
-            for (listener in listeners) {
-               listener.onLocationCreated(listOf(createdLocation))
-            }
-            createdLocation
-         }
+         locationDao.createIfNotExists(pLocation)
       } catch (e: SQLException) {
          Log.e(LOG_NAME, "There was a problem creating the location: $pLocation.", e)
          throw LocationException("There was a problem creating the location: $pLocation.", e)
       }
+
+      for (listener in listeners) {
+         listener.onLocationCreated(listOf(createdLocation))
+      }
+
       return createdLocation
    }
 
@@ -80,40 +70,68 @@ class LocationLocalDataSource @Inject constructor(
    }
 
    /**
-    * We have to realign all the foreign ids so the update works correctly
+    * Set based existence check, returns the subset of remote ids that already exist locally.
+    */
+   @Throws(LocationException::class)
+   fun readRemoteIds(remoteIds: Collection<String>): Set<String> {
+      if (remoteIds.isEmpty()) return emptySet()
+
+      return try {
+         locationDao.queryBuilder()
+            .selectColumns(Location.COLUMN_NAME_REMOTE_ID)
+            .where()
+            .`in`(Location.COLUMN_NAME_REMOTE_ID, remoteIds)
+            .query()
+            .mapNotNull { it.remoteId }
+            .toSet()
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to query for existence of remote locations", e)
+         throw LocationException("Unable to query for existence of remote locations", e)
+      }
+   }
+
+   /**
+    * Create the given locations and remove all but the most recent location for each of their
+    * users in the event, in a single transaction.
     *
-    * @param location
     * @throws LocationException
     */
    @Throws(LocationException::class)
-   fun update(location: Location): Location {
-      // set all the ids as needed
-      val pOldLocation = read(location.id)
+   fun replaceUserLocations(event: Event, locations: Collection<Location>): List<Location> {
+      if (locations.isEmpty()) return emptyList()
 
-      // do the update
-      try {
+      val created = try {
          TransactionManager.callInTransaction(daoStore.connectionSource) {
-            location.id = pOldLocation.id
-
-            // FIXME : make this run faster?
-            for (lp in location.properties) {
-               for (olp in pOldLocation.properties) {
-                  if (lp.key.equals(olp.key, ignoreCase = true)) {
-                     lp.id = olp.id
-                     break
-                  }
-               }
-            }
-            locationDao.update(location)
-            val properties: Collection<LocationProperty>? = location.properties
-            if (properties != null) {
-               for (property in properties) {
-                  property.location = location
-                  locationPropertyDao.createOrUpdate(property)
-               }
-            }
-            null
+            val created = locations.map { locationDao.createIfNotExists(it) }
+
+            val userIds = created.mapNotNull { it.user?.id }.distinct().joinToString(",")
+            val stale = "SELECT _id FROM ${Location.TABLE_NAME} WHERE ${Location.COLUMN_NAME_EVENT_ID} = ? AND ${Location.COLUMN_NAME_USER_ID} IN ($userIds) " +
+               "AND _id != (SELECT latest._id FROM ${Location.TABLE_NAME} latest WHERE latest.${Location.COLUMN_NAME_USER_ID} = ${Location.TABLE_NAME}.${Location.COLUMN_NAME_USER_ID} " +
+               "AND latest.${Location.COLUMN_NAME_EVENT_ID} = ${Location.TABLE_NAME}.${Location.COLUMN_NAME_EVENT_ID} ORDER BY latest.${Location.COLUMN_NAME_TIMESTAMP} DESC LIMIT 1)"
+            locationDao.executeRaw("DELETE FROM ${Location.TABLE_NAME} WHERE _id IN ($stale)", event.id.toString())
+
+            created
          }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "There was a problem replacing user locations.", e)
+         throw LocationException("There was a problem replacing user locations.", e)
+      }
+
+      for (listener in listeners) {
+         listener.onLocationCreated(created)
+      }
+
+      return created
+   }
+
+   /**
+    * @param location
+    * @throws LocationException
+    */
+   @Throws(LocationException::class)
+   fun update(location: Location): Location {
+      try {
+         locationDao.update(location)
       } catch (e: SQLException) {
          Log.e(LOG_NAME, "There was a problem updating the location: $location.", e)
          throw LocationException("There was a problem updating the location: $location.", e)
@@ -154,18 +172,6 @@ class LocationLocalDataSource @Inject constructor(
       return locations
    }
 
-   fun getSyncedLocations(user: User, event: Event): List<Location> {
-      val queryBuilder = locationDao.queryBuilder()
-      queryBuilder
-         .where()
-         .eq("user_id", user.id)
-         .and()
-         .isNotNull("remote_id").and()
-         .eq("event_id", event.id)
-      queryBuilder.orderBy("timestamp", false)
-      return queryBuilder.query()
-   }
-
    fun getAllUsersLocations(
       user: User?,
       filter: Filter<Temporal>? = null
@@ -272,8 +278,7 @@ class LocationLocalDataSource @Inject constructor(
    }
 
    /**
-    * Deletes locations. This will also delete a Location's child
-    * Properties and Geometry data.
+    * Deletes locations.
     *
     * @param locations
     * @throws LocationException
@@ -282,16 +287,9 @@ class LocationLocalDataSource @Inject constructor(
    fun delete(locations: Collection<Location>): Int {
       val deletedLocations = try {
          TransactionManager.callInTransaction(daoStore.connectionSource) { // read the full Location in
-            val deletedLocations = mutableListOf<Location>()
-            for (location in locations) {
-               // delete Location properties.
-               location.properties?.forEach { property ->
-                  locationPropertyDao.deleteById(property.id)
-               }
-
-               // finally, delete the Location.
-               locationDao.deleteById(location.id)
-               deletedLocations.add(location)
+            val deletedLocations = locations.toList()
+            deletedLocations.chunked(DELETE_BATCH_SIZE).forEach { batch ->
+               locationDao.deleteIds(batch.map { it.id })
             }
 
             for (listener in listeners) {
@@ -308,6 +306,135 @@ class LocationLocalDataSource @Inject constructor(
       return deletedLocations.size
    }
 
+   /**
+    * Ids of all users with locations in the event.
+    */
+   @Throws(LocationException::class)
+   fun getUserIds(event: Event): List<Long> {
+      return try {
+         locationDao.queryRaw(
+            "SELECT DISTINCT ${Location.COLUMN_NAME_USER_ID} FROM ${Location.TABLE_NAME} WHERE ${Location.COLUMN_NAME_EVENT_ID} = ?",
+            event.id.toString()
+         ).use { results -> results.mapNotNull { it.firstOrNull()?.toLongOrNull() } }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to query users with locations", e)
+         throw LocationException("Unable to query users with locations", e)
+      }
+   }
+
+   /**
+    * Light-weight track of a user's synced locations in an event, oldest first. Only the id,
+    * timestamp and geometry are read. Locations that were never pushed are not included.
+    */
+   @Throws(LocationException::class)
+   fun getTrack(userId: Long, eventId: Long, before: Date): List<Location> {
+      return try {
+         locationDao.queryBuilder()
+            .selectColumns("_id", Location.COLUMN_NAME_TIMESTAMP, "geometry")
+            .orderBy(Location.COLUMN_NAME_TIMESTAMP, true)
+            .where()
+            .eq(Location.COLUMN_NAME_USER_ID, userId)
+            .and()
+            .eq(Location.COLUMN_NAME_EVENT_ID, eventId)
+            .and()
+            .lt(Location.COLUMN_NAME_TIMESTAMP, before)
+            .and()
+            .isNotNull(Location.COLUMN_NAME_REMOTE_ID)
+            .query()
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to query user track", e)
+         throw LocationException("Unable to query user track", e)
+      }
+   }
+
+   /**
+    * Keep only the most recent synced locations in the event, locations that were never pushed
+    * are not trimmed.
+    *
+    * @param keep number of synced locations to keep
+    * @return number of locations deleted
+    * @throws LocationException
+    */
+   @Throws(LocationException::class)
+   fun trimLocations(event: Event, keep: Int): Int {
+      val locations = try {
+         locationDao.queryRaw(
+            "SELECT * FROM ${Location.TABLE_NAME} WHERE ${Location.COLUMN_NAME_EVENT_ID} = ? AND ${Location.COLUMN_NAME_REMOTE_ID} IS NOT NULL ORDER BY ${Location.COLUMN_NAME_TIMESTAMP} DESC LIMIT -1 OFFSET $keep",
+            locationDao.rawRowMapper,
+            event.id.toString()
+         ).use { it.toList() }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to trim locations for event", e)
+         throw LocationException("Unable to trim locations for event", e)
+      }
+
+      return if (locations.isNotEmpty()) delete(locations) else 0
+   }
+
+   /**
+    * Bookkeeping after a successful push, done in a single transaction. Pushed locations are
+    * assigned their remote ids with one prepared statement, locations the server did not
+    * accept are removed, and the user's synced locations are trimmed to the most recent [keep].
+    * Listeners are notified of both the rejected and the trimmed locations.
+    *
+    * @param remoteIds remote id returned by the server for each pushed location, null if rejected
+    * @return number of locations deleted
+    * @throws LocationException
+    */
+   @Throws(LocationException::class)
+   fun syncPushedLocations(
+      user: User,
+      event: Event,
+      remoteIds: Map<Location, String?>,
+      keep: Int
+   ): Int {
+      val rejected = remoteIds.filterValues { it == null }.keys
+      val deleted = try {
+         TransactionManager.callInTransaction(daoStore.connectionSource) {
+            val statement = daoStore.writableDatabase.compileStatement(
+               "UPDATE ${Location.TABLE_NAME} SET ${Location.COLUMN_NAME_REMOTE_ID} = ? WHERE _id = ?"
+            )
+            statement.use {
+               remoteIds.forEach { (location, remoteId) ->
+                  if (remoteId != null) {
+                     it.bindString(1, remoteId)
+                     it.bindLong(2, location.id)
+                     it.executeUpdateDelete()
+                     it.clearBindings()
+                     location.remoteId = remoteId
+                  }
+               }
+            }
+
+            // keep the most recent synced locations, delete the rest
+            val trimmed = locationDao.queryRaw(
+               "SELECT * FROM ${Location.TABLE_NAME} WHERE ${Location.COLUMN_NAME_USER_ID} = ? AND ${Location.COLUMN_NAME_EVENT_ID} = ? AND ${Location.COLUMN_NAME_REMOTE_ID} IS NOT NULL ORDER BY ${Location.COLUMN_NAME_TIMESTAMP} DESC LIMIT -1 OFFSET $keep",
+               locationDao.rawRowMapper,
+               user.id.toString(),
+               event.id.toString()
+            ).use { it.toList() }
+
+            val deleted = rejected.toList() + trimmed
+            deleted.chunked(DELETE_BATCH_SIZE).forEach { batch ->
+               locationDao.deleteIds(batch.map { it.id })
+            }
+
+            deleted
+         }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to update pushed locations", e)
+         throw LocationException("Unable to update pushed locations", e)
+      }
+
+      if (deleted.isNotEmpty()) {
+         for (listener in listeners) {
+            listener.onLocationDeleted(deleted)
+         }
+      }
+
+      return deleted.size
+   }
+
    override fun addListener(listener: ILocationEventListener): Boolean {
       return listeners.add(listener)
    }
@@ -318,5 +445,7 @@ class LocationLocalDataSource @Inject constructor(
 
    companion object {
       private val LOG_NAME = LocationLocalDataSource::class.java.name
+
+      private const val DELETE_BATCH_SIZE = 500
    }
 }
\ No newline at end of file
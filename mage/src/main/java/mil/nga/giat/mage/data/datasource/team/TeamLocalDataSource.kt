@@ -96,6 +96,64 @@ class TeamLocalDataSource @Inject constructor(
       }
    }
 
+   /**
+    * Create or update teams, existing teams are matched by remote id.
+    *
+    * @throws TeamException
+    */
+   @Throws(TeamException::class)
+   fun createOrUpdate(teams: Collection<Team>): List<Team> {
+      return try {
+         val existing = teams.map { it.remoteId }.chunked(QUERY_BATCH_SIZE).flatMap { remoteIds ->
+            teamDao.queryBuilder().where().`in`("remote_id", remoteIds).query()
+         }.associateBy { it.remoteId }
+
+         teams.map { team ->
+            val oldTeam = existing[team.remoteId]
+            if (oldTeam == null) {
+               teamDao.createIfNotExists(team)
+            } else {
+               team.id = oldTeam.id
+               teamDao.update(team)
+               team
+            }
+         }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "There was a problem saving teams", e)
+         throw TeamException("There was a problem saving teams", e)
+      }
+   }
+
+   /**
+    * Make the teams of an event match the given teams, only changed team/event rows are written.
+    *
+    * @throws TeamException
+    */
+   @Throws(TeamException::class)
+   fun syncEventTeams(event: Event, teams: Collection<Team>) {
+      try {
+         val stored = teamEventDao.queryRaw("SELECT team_id FROM teamevents WHERE event_id = ?", event.id.toString()).use { results ->
+            results.map { it[0].toLong() }.toSet()
+         }
+
+         val desired = teams.associateBy { it.id }
+         val removed = stored - desired.keys
+         removed.chunked(QUERY_BATCH_SIZE).forEach { teamIds ->
+            val builder = teamEventDao.deleteBuilder()
+            builder.where().eq("event_id", event.id).and().`in`("team_id", teamIds)
+            builder.delete()
+         }
+
+         val added = (desired - stored).values.map { TeamEvent(it, event) }
+         if (added.isNotEmpty()) {
+            teamEventDao.create(added)
+         }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "There was a problem syncing teams for event ${event.remoteId}", e)
+         throw TeamException("There was a problem syncing teams for event ${event.remoteId}", e)
+      }
+   }
+
    fun deleteTeamEvents() {
       try {
          val db = teamEventDao.deleteBuilder()
@@ -170,5 +228,6 @@ class TeamLocalDataSource @Inject constructor(
 
    companion object {
       private val LOG_NAME = TeamLocalDataSource::class.java.name
+      private const val QUERY_BATCH_SIZE = 500
    }
 }
\ No newline at end of file
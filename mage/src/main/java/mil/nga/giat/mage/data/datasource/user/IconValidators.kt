@@ -0,0 +1,19 @@
+package mil.nga.giat.mage.data.datasource.user
+
+import mil.nga.giat.mage.database.model.user.UserLocal
+
+/**
+ * Validators of the last downloaded user icon. The ETag and Last-Modified are replayed to
+ * the server, the hash of the downloaded bytes catches unchanged icons served without them.
+ */
+data class IconValidators(
+   val etag: String? = null,
+   val lastModified: String? = null,
+   val hash: String? = null
+) {
+   companion object {
+      fun from(userLocal: UserLocal): IconValidators {
+         return IconValidators(userLocal.iconETag, userLocal.iconLastModified, userLocal.iconHash)
+      }
+   }
+}
@@ -2,8 +2,10 @@ package mil.nga.giat.mage.data.datasource.user
 
 import android.util.Log
 import com.j256.ormlite.dao.Dao
+import com.j256.ormlite.misc.TransactionManager
 import mil.nga.giat.mage.data.datasource.team.TeamLocalDataSource
 import mil.nga.giat.mage.database.model.event.Event
+import mil.nga.giat.mage.database.model.team.Team
 import mil.nga.giat.mage.database.model.team.TeamEvent
 import mil.nga.giat.mage.database.model.user.User
 import mil.nga.giat.mage.database.model.user.UserLocal
@@ -147,6 +149,131 @@ class UserLocalDataSource @Inject constructor(
       }
    }
 
+   /**
+    * Create or update users in a single transaction, existing users are matched by username.
+    *
+    * @throws UserException
+    */
+   @Throws(UserException::class)
+   fun createOrUpdate(users: Collection<User>): List<User> {
+      if (users.isEmpty()) return emptyList()
+
+      val saved = try {
+         TransactionManager.callInTransaction(userDao.connectionSource) {
+            saveUsers(users)
+         }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "There was a problem saving users", e)
+         throw UserException("There was a problem saving users", e)
+      }
+
+      notifySaved(saved)
+      return saved.created + saved.updated
+   }
+
+   /**
+    * Replace the teams of an event and the members of those teams in a single transaction.
+    *
+    * Teams and users are created or updated in bulk. The user/team and team/event join rows are
+    * diffed against the stored rows so only memberships that changed are written. Team
+    * memberships of teams that are not part of this sync are removed.
+    *
+    * @return the saved users
+    * @throws UserException
+    */
+   @Throws(UserException::class)
+   fun syncEventTeams(event: Event, members: Map<Team, Collection<User>>): List<User> {
+      val saved = try {
+         TransactionManager.callInTransaction(userDao.connectionSource) {
+            val teams = teamLocalDataSource.createOrUpdate(members.keys).associateBy { it.remoteId }
+            val saved = saveUsers(members.values.flatten().distinctBy { it.remoteId })
+            val users = (saved.created + saved.updated).associateBy { it.remoteId }
+
+            val memberships = members.flatMap { (team, teamUsers) ->
+               val savedTeam = teams.getValue(team.remoteId)
+               teamUsers.mapNotNull { user -> users[user.remoteId]?.let { it to savedTeam } }
+            }
+
+            syncUserTeams(memberships)
+            teamLocalDataSource.syncEventTeams(event, teams.values)
+            saved
+         }
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "There was a problem syncing teams for event ${event.remoteId}", e)
+         throw UserException("There was a problem syncing teams for event ${event.remoteId}", e)
+      }
+
+      Log.d(LOG_NAME, "Synced ${members.size} teams for event ${event.remoteId}")
+      notifySaved(saved)
+      return saved.created + saved.updated
+   }
+
+   private class SavedUsers(val created: List<User>, val updated: List<User>)
+
+   @Throws(SQLException::class)
+   private fun saveUsers(users: Collection<User>): SavedUsers {
+      val existing = users.map { it.username }.distinct().chunked(QUERY_BATCH_SIZE).flatMap { usernames ->
+         userDao.queryBuilder().where().`in`(User.COLUMN_NAME_USERNAME, usernames).query()
+      }.associateBy { it.username }
+
+      val created = mutableListOf<User>()
+      val updated = mutableListOf<User>()
+      users.forEach { user ->
+         val oldUser = existing[user.username]
+         if (oldUser == null) {
+            user.userLocal = userLocalDao.createIfNotExists(UserLocal())
+            created.add(userDao.createIfNotExists(user))
+         } else {
+            user.id = oldUser.id
+            user.userLocal = oldUser.userLocal
+            userDao.update(user)
+            updated.add(user)
+         }
+      }
+
+      return SavedUsers(created, updated)
+   }
+
+   private fun notifySaved(saved: SavedUsers) {
+      Log.d(LOG_NAME, "Created ${saved.created.size} and updated ${saved.updated.size} users")
+      for (listener in userListeners) {
+         saved.created.forEach { listener.onUserCreated(it) }
+         saved.updated.forEach { listener.onUserUpdated(it) }
+      }
+   }
+
+   /**
+    * Make the user/team join table match the given memberships, only changed rows are written.
+    */
+   @Throws(SQLException::class)
+   private fun syncUserTeams(memberships: List<Pair<User, Team>>) {
+      val stored = mutableMapOf<Pair<Long, Long>, Long>()
+      val stale = mutableListOf<Long>()
+      userTeamDao.queryRaw("SELECT id, user_id, team_id FROM userteams").use { results ->
+         results.forEach { (id, userId, teamId) ->
+            val key = userId.toLong() to teamId.toLong()
+            if (stored.put(key, id.toLong()) != null) {
+               stale.add(id.toLong())
+            }
+         }
+      }
+
+      val desired = memberships.associateBy { (user, team) -> user.id to team.id }
+      stale.addAll((stored - desired.keys).values)
+      stale.chunked(QUERY_BATCH_SIZE).forEach { ids ->
+         val builder = userTeamDao.deleteBuilder()
+         builder.where().`in`("id", ids)
+         builder.delete()
+      }
+
+      val added = (desired - stored.keys).values.map { (user, team) -> UserTeam(user, team) }
+      if (added.isNotEmpty()) {
+         userTeamDao.create(added)
+      }
+
+      Log.d(LOG_NAME, "Added ${added.size} and removed ${stale.size} team memberships")
+   }
+
    @Throws(UserException::class)
    fun setCurrentUser(user: User): User {
       try {
@@ -236,11 +363,14 @@ class UserLocalDataSource @Inject constructor(
    }
 
    @Throws(UserException::class)
-   fun setIconPath(user: User, path: String?): User {
+   fun setIconPath(user: User, path: String?, validators: IconValidators = IconValidators()): User {
       try {
          val builder = userLocalDao.updateBuilder()
          builder.where().idEq(user.userLocal.id)
          builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_PATH, path)
+         builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_ETAG, validators.etag)
+         builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_LAST_MODIFIED, validators.lastModified)
+         builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_HASH, validators.hash)
          builder.update()
          userLocalDao.refresh(user.userLocal)
       } catch (e: SQLException) {
@@ -253,6 +383,25 @@ class UserLocalDataSource @Inject constructor(
       return user
    }
 
+   /**
+    * Update the validators of an icon that did not change, without notifying listeners.
+    */
+   @Throws(UserException::class)
+   fun setIconValidators(user: User, validators: IconValidators) {
+      try {
+         val builder = userLocalDao.updateBuilder()
+         builder.where().idEq(user.userLocal.id)
+         builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_ETAG, validators.etag)
+         builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_LAST_MODIFIED, validators.lastModified)
+         builder.updateColumnValue(UserLocal.COLUMN_NAME_ICON_HASH, validators.hash)
+         builder.update()
+         userLocalDao.refresh(user.userLocal)
+      } catch (e: SQLException) {
+         Log.e(LOG_NAME, "Unable to update users '" + user.displayName + "' icon validators", e)
+         throw UserException("Unable to update UserLocal table", e)
+      }
+   }
+
    @Throws(UserException::class)
    private fun clearCurrentUser() {
       try {
@@ -321,6 +470,7 @@ class UserLocalDataSource @Inject constructor(
 
    companion object {
       private val LOG_NAME = UserLocalDataSource::class.java.name
+      private const val QUERY_BATCH_SIZE = 500
       private val userListeners: MutableCollection<IUserEventListener> = CopyOnWriteArrayList()
       private val eventListeners: MutableCollection<IEventEventListener> = CopyOnWriteArrayList()
    }
@@ -5,9 +5,7 @@ import android.os.Environment
 import android.util.Log
 import androidx.annotation.WorkerThread
 import dagger.hilt.android.qualifiers.ApplicationContext
-import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import mil.nga.geopackage.GeoPackageFactory
 import mil.nga.giat.mage.data.datasource.team.TeamLocalDataSource
@@ -17,13 +15,13 @@ import mil.nga.giat.mage.database.model.event.Event
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
 import mil.nga.giat.mage.data.datasource.layer.LayerLocalDataSource
 import mil.nga.giat.mage.data.datasource.permission.RoleLocalDataSource
-import mil.nga.giat.mage.database.model.team.TeamEvent
 import mil.nga.giat.mage.database.model.user.User
 import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
-import mil.nga.giat.mage.database.model.user.UserTeam
-import mil.nga.giat.mage.glide.GlideApp
-import mil.nga.giat.mage.glide.model.Avatar
+import mil.nga.giat.mage.glide.AvatarPrefetcher
+import mil.nga.giat.mage.map.annotation.ObservationIconStyle
 import mil.nga.giat.mage.map.preference.MapLayerPreferences
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
+import mil.nga.giat.mage.network.HttpCache
 import mil.nga.giat.mage.network.Resource
 import mil.nga.giat.mage.network.event.EventService
 import mil.nga.giat.mage.network.feed.FeedService
@@ -32,6 +30,7 @@ import mil.nga.giat.mage.network.observation.ObservationService
 import mil.nga.giat.mage.network.role.RoleService
 import mil.nga.giat.mage.network.team.TeamService
 import mil.nga.giat.mage.sdk.utils.ZipUtility
+import mil.nga.giat.mage.sync.SyncPipeline
 import java.io.File
 import java.util.Date
 import javax.inject.Inject
@@ -47,11 +46,14 @@ class EventRepository @Inject constructor(
    private val layerService: LayerService,
    private val eventService: EventService,
    private val observationService: ObservationService,
+   private val conditionalRequestInterceptor: ConditionalRequestInterceptor,
    private val userRepository: UserRepository,
    private val roleLocalDataSource: RoleLocalDataSource,
    private val userLocalDataSource: UserLocalDataSource,
    private val layerLocalDataSource: LayerLocalDataSource,
-   private val eventLocalDataSource: EventLocalDataSource
+   private val eventLocalDataSource: EventLocalDataSource,
+   private val httpCache: HttpCache,
+   private val avatarPrefetcher: AvatarPrefetcher
 ) {
 
    suspend fun getEvents(forceUpdate: Boolean): List<Event> {
@@ -69,26 +71,41 @@ class EventRepository @Inject constructor(
       }
    }
 
-   suspend fun syncEvent(event: Event): Resource<out Event> {
-      val resource = withContext(Dispatchers.IO) {
-         try {
-            syncTeams(event)
-            syncObservationIcons(event)
-            syncLayers(event)
-            syncFeeds(event)
-
-            Resource.success(event)
-         } catch (e: Exception) {
-            Log.e(LOG_NAME, "Error syncing event", e)
-            Resource.error(e.localizedMessage ?: e.toString(), event)
+   /**
+    * Sync teams, user icons, observation icons, layers and feeds for the event. Stages run
+    * concurrently, user icons once the team members are known. A failed stage is reported
+    * without failing the others.
+    */
+   suspend fun syncEvent(event: Event): Resource<out Event> = withContext(Dispatchers.IO) {
+      val pipeline = SyncPipeline(listOf(
+         SyncPipeline.Stage(STAGE_TEAMS) { syncTeams(event) },
+         SyncPipeline.Stage(STAGE_USER_ICONS, setOf(STAGE_TEAMS)) { userRepository.syncIcons(event) },
+         SyncPipeline.Stage(STAGE_OBSERVATION_ICONS) { syncObservationIcons(event) },
+         SyncPipeline.Stage(STAGE_LAYERS) { syncLayers(event) },
+         SyncPipeline.Stage(STAGE_FEEDS) { syncFeeds(event) }
+      ))
+
+      val start = System.currentTimeMillis()
+      val results = pipeline.run()
+      results.forEach { result ->
+         when {
+            result.skipped -> Log.w(LOG_NAME, "Skipped event sync stage ${result.name}")
+            result.error != null -> Log.e(LOG_NAME, "Error syncing event ${result.name} after ${result.durationMillis}ms", result.error)
+            else -> Log.d(LOG_NAME, "Synced event ${result.name} in ${result.durationMillis}ms")
          }
       }
+      Log.i(LOG_NAME, "Synced event ${event.name} in ${System.currentTimeMillis() - start}ms")
 
-      CoroutineScope(Dispatchers.IO).launch {
-         userRepository.syncIcons(event)
+      httpCache.stats().forEach { (partition, stats) ->
+         Log.d(LOG_NAME, "HTTP cache $partition hit rate ${"%.2f".format(stats.hitRate)} (${stats.hits}/${stats.requests}), ${stats.size / 1024}KB")
       }
 
-      return resource
+      val failed = results.filterNot { it.succeeded }
+      if (failed.isEmpty()) {
+         Resource.success(event)
+      } else {
+         Resource.error("Error syncing event ${failed.joinToString { it.name }}", event)
+      }
    }
 
    private suspend fun syncRoles() {
@@ -120,92 +137,53 @@ class EventRepository @Inject constructor(
    }
 
    private suspend fun syncTeams(event: Event): List<User> {
-      val iconUsers = mutableListOf<User>()
-
       val response = teamService.getTeams(event.remoteId)
-      if (response.isSuccessful) {
-         val teams = response.body() ?: emptyMap()
-         Log.d(LOG_NAME, "Fetched " + teams.size + " teams")
-
-         userLocalDataSource.deleteUserTeams()
-
-         teams.keys.forEach { team ->
-            val updatedTeam = teamLocalDataSource.createOrUpdate(team)
-            teams[updatedTeam]?.forEach { (user, roleId) ->
-               try {
-                  user.fetchedDate = Date()
-                  user.role = roleLocalDataSource.read(roleId)
-                  userLocalDataSource.read(user.remoteId)?.let { localUser ->
-                     user.id = localUser.id
-                  }
-
-                  val updatedUser = userLocalDataSource.createOrUpdate(user)
-                  if (updatedUser.avatarUrl != null) {
-                     GlideApp.with(context)
-                        .download(Avatar.forUser(updatedUser))
-                        .submit(MAX_AVATAR_DIMENSION, MAX_AVATAR_DIMENSION)
-                  }
-
-                  if (updatedUser.iconUrl != null) {
-                     iconUsers.add(updatedUser)
-                  }
-
-                  val teamUser = if (userLocalDataSource.read(updatedUser.remoteId) == null) {
-                     userLocalDataSource.createOrUpdate(updatedUser)
-                  } else updatedUser
-
-                  // populate the user/team join table
-                  userLocalDataSource.create(UserTeam(teamUser, updatedTeam))
-               } catch (e: Exception) {
-                  Log.e(LOG_NAME, "Error sync'ing user", e)
-               }
-            }
-
-            // populate the team/event join table
-            teamLocalDataSource.create(
-               TeamEvent(
-                  updatedTeam,
-                  event
-               )
-            )
+      if (!response.isSuccessful) return emptyList()
+
+      val teams = response.body() ?: emptyMap()
+      Log.d(LOG_NAME, "Fetched " + teams.size + " teams")
+
+      val roles = teams.values.flatten()
+         .map { it.roleId }
+         .distinct()
+         .associateWith { roleLocalDataSource.read(it) }
+
+      val fetchedDate = Date()
+      val members = teams.mapValues { (_, users) ->
+         users.map { (user, roleId) ->
+            user.fetchedDate = fetchedDate
+            user.role = roles[roleId]
+            user
          }
-
-         teamLocalDataSource.syncTeams(teams.keys)
       }
 
-      return iconUsers
+      val users = userLocalDataSource.syncEventTeams(event, members)
+      teamLocalDataSource.syncTeams(teams.keys)
+      avatarPrefetcher.enqueue(users)
+
+      return users
    }
 
    private suspend fun syncObservationIcons(event: Event) {
       val response = observationService.getObservationIcons(event.remoteId)
-      if (response.isSuccessful) {
-         val directory = File(context.filesDir.toString() + OBSERVATION_ICON_PATH)
-         val destination = File(directory, "${event.remoteId}.zip")
-         if (destination.parentFile?.exists() != true) {
-            destination.parentFile?.mkdirs()
+      val body = response.body()
+      if (response.isSuccessful && body != null) {
+         val directory = File(context.filesDir.toString() + OBSERVATION_ICON_PATH, event.remoteId)
+         val changed = body.byteStream().use { input ->
+            ZipUtility.sync(input, directory)
          }
-
-         if (destination.exists()) {
-            destination.delete()
-         }
-
-         if (!destination.exists()) {
-            destination.createNewFile()
-         }
-
-         val zipDirectory = File(directory, event.remoteId)
-         if (!zipDirectory.exists()) {
-            zipDirectory.mkdirs()
-         }
-
-         response.body()!!.byteStream().use { input ->
-            destination.outputStream().use {  output ->
-               input.copyTo(output)
-            }
+         conditionalRequestInterceptor.commit(response.raw().request.url)
+
+         // icons are laid out as icons/{formId}/{primary}/{secondary}, anything else affects every form
+         val paths = changed.map { it.split('/') }
+         val formIds = paths.mapNotNull { it.getOrNull(1)?.toLongOrNull() }.toSet()
+         if (paths.any { it.size < 3 || it[1].toLongOrNull() == null }) {
+            ObservationIconStyle.invalidate(event.remoteId)
+         } else if (formIds.isNotEmpty()) {
+            ObservationIconStyle.invalidate(event.remoteId, formIds)
          }
 
-         ZipUtility.unzip(destination, zipDirectory)
-         destination.delete()
+         Log.d(LOG_NAME, "Synced observation icons for event ${event.remoteId}, ${changed.size} changed in ${formIds.size} forms")
       }
    }
 
@@ -252,7 +230,11 @@ class EventRepository @Inject constructor(
 
    companion object {
       private val LOG_NAME = EventRepository::class.java.name
-      private const val MAX_AVATAR_DIMENSION = 1024
+      private const val STAGE_TEAMS = "teams"
+      private const val STAGE_USER_ICONS = "user icons"
+      private const val STAGE_OBSERVATION_ICONS = "observation icons"
+      private const val STAGE_LAYERS = "layers"
+      private const val STAGE_FEEDS = "feeds"
 
       @JvmStatic
       val OBSERVATION_ICON_PATH = "/icons/observations"
@@ -1,10 +1,21 @@
 package mil.nga.giat.mage.data.repository.feed
 
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
 import androidx.annotation.WorkerThread
+import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
+import mil.nga.giat.mage.R
 import mil.nga.giat.mage.database.model.feed.Feed
+import mil.nga.giat.mage.database.model.feed.FeedAndLocal
 import mil.nga.giat.mage.database.model.feed.FeedContent
+import mil.nga.giat.mage.database.model.feed.FeedItem
 import mil.nga.giat.mage.database.dao.feed.FeedItemDao
 import mil.nga.giat.mage.database.model.feed.FeedLocal
 import mil.nga.giat.mage.database.dao.feed.FeedLocalDao
@@ -14,23 +25,32 @@ import mil.nga.giat.mage.network.gson.asLongOrNull
 import mil.nga.giat.mage.network.gson.asStringOrNull
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
 import mil.nga.giat.mage.sdk.utils.ISO8601DateFormatFactory
+import mil.nga.giat.mage.sdk.utils.toBytes
+import mil.nga.sf.util.GeometryEnvelopeBuilder
+import java.security.MessageDigest
 import java.text.ParseException
 import java.util.*
 import javax.inject.Inject
+import kotlin.random.Random
 
 class FeedRepository @Inject constructor(
+   @ApplicationContext private val context: Context,
+   private val preferences: SharedPreferences,
    private val feedLocalDao: FeedLocalDao,
    private val feedItemDao: FeedItemDao,
    private val feedService: FeedService,
    private val eventLocalDataSource: EventLocalDataSource
 ) {
    suspend fun syncFeed(feed: Feed) = withContext(Dispatchers.IO) {
+      val start = Date().time
+      var itemCount: Int? = null
       val resource = try {
          eventLocalDataSource.currentEvent?.let { event ->
             val response = feedService.getFeedItems(event.remoteId, feed.id)
             if (response.isSuccessful) {
                response.body()?.let { content ->
                   saveFeed(feed, content)
+                  itemCount = content.items.size
                   Resource.success(content)
                } ?: Resource.error("Error parsing feed content body", null)
             } else {
@@ -41,20 +61,99 @@ class FeedRepository @Inject constructor(
          Resource.error(e.localizedMessage ?: e.toString(), null)
       }
 
-      val local = FeedLocal(feed.id)
-      local.lastSync = Date().time
+      val now = Date().time
+      val local = feedLocalDao.getFeedLocal(feed.id) ?: FeedLocal(feed.id)
+      local.lastSync = now
+      local.lastSyncDuration = now - start
+      if (resource?.status == Resource.Status.SUCCESS) {
+         local.itemCount = itemCount
+         local.failures = 0
+      } else {
+         local.failures++
+      }
+      local.nextSync = now + syncInterval(feed, local.failures)
       feedLocalDao.upsert(local)
 
       resource
    }
 
+   /**
+    * Sync every feed in the current event that is due for an update. Due feeds are fetched
+    * concurrently, fastest first based on their last sync duration, so a slow feed only holds
+    * one of the permits. The number of permits is set by the feed sync concurrency preference.
+    *
+    * @return true if any feed was synced
+    */
+   suspend fun syncDueFeeds(): Boolean = withContext(Dispatchers.IO) {
+      val eventId = eventLocalDataSource.currentEvent?.remoteId ?: return@withContext false
+      val now = Date().time
+      val feeds = feedLocalDao.getFeeds(eventId)
+         .filter { nextSync(it) <= now }
+         .sortedBy { it.local?.lastSyncDuration ?: 0 }
+
+      val semaphore = Semaphore(getMaxConcurrentSyncs())
+      feeds.map {
+         async {
+            semaphore.withPermit {
+               Log.d(LOG_NAME, "Sync feed items for feed ${it.feed.title}")
+               syncFeed(it.feed)
+            }
+         }
+      }.awaitAll()
+
+      feeds.isNotEmpty()
+   }
+
+   /**
+    * Milliseconds until the next feed in the current event is due for an update.
+    */
+   fun getNextSyncDelay(): Long {
+      val now = Date().time
+      val delay = eventLocalDataSource.currentEvent?.remoteId?.let { eventId ->
+         feedLocalDao.getFeeds(eventId).map {
+            (nextSync(it) - now) / 1000
+         }.minOrNull()
+      } ?: MAX_SYNC_DELAY
+
+      return delay.coerceAtLeast(MIN_SYNC_DELAY) * 1000
+   }
+
+   /**
+    * Time the feed is next due, feeds synced before the next sync was recorded are due one
+    * update interval after their last sync.
+    */
+   private fun nextSync(feed: FeedAndLocal): Long {
+      val local = feed.local ?: return 0
+      return local.nextSync ?: local.lastSync?.let { it + feed.feed.updateFrequency!! * 1000 } ?: 0
+   }
+
+   /**
+    * Feed update interval in milliseconds, doubled for each consecutive failure up to
+    * MAX_BACKOFF and jittered so feeds with the same frequency do not stay in lockstep.
+    */
+   private fun syncInterval(feed: Feed, failures: Int): Long {
+      val interval = (feed.updateFrequency ?: MAX_SYNC_DELAY) * 1000
+      val backoff = if (failures > 0) {
+         (interval shl failures.coerceAtMost(MAX_BACKOFF_EXPONENT)).coerceAtMost(maxOf(interval, MAX_BACKOFF))
+      } else interval
+
+      val jitter = (backoff * SYNC_JITTER * (Random.nextDouble() * 2 - 1)).toLong()
+      return backoff + jitter
+   }
+
+   private fun getMaxConcurrentSyncs(): Int {
+      val maxConcurrent = preferences.getInt(context.getString(R.string.feedSyncConcurrencyKey), context.resources.getInteger(R.integer.feedSyncConcurrencyDefaultValue))
+      return maxConcurrent.coerceAtLeast(1)
+   }
+
+   /**
+    * Diff the feed content against the stored items by id and content hash, only new, changed
+    * and removed items are written.
+    */
    @WorkerThread
    private fun saveFeed(feed: Feed, content: FeedContent) {
-      if (!feed.itemsHaveIdentity) {
-         feedItemDao.removeFeedItems(feed.id)
-      }
-
-      for (item in content.items) {
+      val items = content.items.associateBy { it.id }.values
+      items.forEach { item ->
          item.feedId = feed.id
 
          item.timestamp = null
@@ -69,10 +168,45 @@ class FeedRepository @Inject constructor(
             }
          }
 
-         feedItemDao.upsert(item)
+         item.geometry?.let { geometry ->
+            val envelope = GeometryEnvelopeBuilder.buildEnvelope(geometry)
+            item.minX = envelope.minX
+            item.minY = envelope.minY
+            item.maxX = envelope.maxX
+            item.maxY = envelope.maxY
+         }
+
+         item.hash = hash(item)
       }
 
-      val itemIds = content.items.map { it.id }
-      feedItemDao.preserveFeedItems(feed.id, itemIds)
+      val hashes = feedItemDao.itemHashes(feed.id).associateBy({ it.id }, { it.hash })
+      val inserted = items.filter { !hashes.containsKey(it.id) }
+      val updated = items.filter { hashes.containsKey(it.id) && hashes[it.id] != it.hash }
+      val removedIds = hashes.keys - items.map { it.id }.toSet()
+
+      feedItemDao.sync(feed.id, inserted, updated, removedIds)
+
+      Log.d(LOG_NAME, "Synced feed ${feed.id}, ${inserted.size} inserted, ${updated.size} updated, ${removedIds.size} removed")
+   }
+
+   private fun hash(item: FeedItem): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      item.geometry?.toBytes()?.let { digest.update(it) }
+      digest.update(0)
+      item.properties?.let { digest.update(it.toString().toByteArray()) }
+      digest.update(0)
+      item.timestamp?.let { digest.update(it.toString().toByteArray()) }
+      return digest.digest().joinToString("") { "%02x".format(it) }
+   }
+
+   companion object {
+      private val LOG_NAME = FeedRepository::class.java.name
+
+      private const val MIN_SYNC_DELAY = 5L
+      private const val MAX_SYNC_DELAY = 5 * 60L
+
+      private const val MAX_BACKOFF_EXPONENT = 6
+      private const val MAX_BACKOFF = 60 * 60 * 1000L
+      private const val SYNC_JITTER = 0.1
    }
-}
\ No newline at end of file
+}
@@ -3,23 +3,25 @@ package mil.nga.giat.mage.data.repository.layer
 import android.app.Application
 import android.util.Log
 import androidx.preference.PreferenceManager
-import com.google.common.io.ByteStreams
-import com.google.gson.JsonObject
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import mil.nga.giat.mage.R
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
 import mil.nga.giat.mage.data.datasource.feature.FeatureLocalDataSource
+import mil.nga.giat.mage.data.datasource.feature.StaticFeatureGeoPackage
 import mil.nga.giat.mage.data.datasource.layer.LayerLocalDataSource
 import mil.nga.giat.mage.database.model.event.Event
 import mil.nga.giat.mage.database.model.geojson.StaticFeature
-import mil.nga.giat.mage.database.model.geojson.StaticFeatureProperty
 import mil.nga.giat.mage.database.model.layer.Layer
-import mil.nga.giat.mage.network.geojson.GeometryConverter
 import mil.nga.giat.mage.network.layer.LayerService
+import mil.nga.giat.mage.network.layer.StaticFeatureReader
 import mil.nga.giat.mage.sdk.exceptions.StaticFeatureException
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.net.URL
@@ -31,7 +33,8 @@ class LayerRepository @Inject constructor(
    private val layerService: LayerService,
    private val layerLocalDataSource: LayerLocalDataSource,
    private val eventLocalDataSource: EventLocalDataSource,
-   private val featureLocalDataSource: FeatureLocalDataSource
+   private val featureLocalDataSource: FeatureLocalDataSource,
+   private val staticFeatureGeoPackage: StaticFeatureGeoPackage
 ) {
 
    @Throws(IOException::class)
@@ -61,6 +64,24 @@ class LayerRepository @Inject constructor(
          .toList()
    }
 
+   /**
+    * GeoPackage database names of the enabled static feature layers. Layers loaded before static
+    * features were written to GeoPackages are converted from their local features.
+    */
+   suspend fun getStaticFeatureGeoPackages(eventId: Long): Map<Long, String> = withContext(Dispatchers.IO) {
+      getStaticFeatureLayers(eventId).mapNotNull { layer ->
+         try {
+            if (!staticFeatureGeoPackage.isIndexed(layer)) {
+               staticFeatureGeoPackage.rebuild(layer)
+            }
+            layer.id to StaticFeatureGeoPackage.name(layer.id)
+         } catch (e: StaticFeatureException) {
+            Log.e(LOG_NAME, "Unable to create GeoPackage for static layer " + layer.name, e)
+            null
+         }
+      }.toMap()
+   }
+
    suspend fun getStaticFeature(layerId: Long, featureId: Long): StaticFeature? = withContext(Dispatchers.IO) {
       featureLocalDataSource.readFeature(layerId, featureId)
    }
@@ -137,6 +158,7 @@ class LayerRepository @Inject constructor(
       try {
          if (deleteLocal) {
             layerLocalDataSource.deleteAll("Feature")
+            staticFeatureGeoPackage.deleteAll()
          }
 
          val response = layerService.getLayers(event.remoteId, "Feature")
@@ -154,6 +176,7 @@ class LayerRepository @Inject constructor(
                if (!remoteLayers.contains(localLayer)) {
 //                  it.remove()
                   layerLocalDataSource.delete(localLayer.id)
+                  staticFeatureGeoPackage.delete(localLayer.id)
                } else {
                   remoteIdToLayer[localLayer.remoteId] = localLayer
                }
@@ -167,6 +190,7 @@ class LayerRepository @Inject constructor(
                   val localLayer = remoteIdToLayer[remoteLayer.remoteId]
                   if (remoteLayer.event != localLayer!!.event) {
                      layerLocalDataSource.delete(localLayer.id)
+                     staticFeatureGeoPackage.delete(localLayer.id)
                      layerLocalDataSource.create(remoteLayer)
                   }
                }
@@ -182,119 +206,126 @@ class LayerRepository @Inject constructor(
       return newLayers
    }
 
-   suspend fun loadFeatures(layer: Layer) {
-
+   /**
+    * Load the static features of a layer. Features are parsed from the response as it streams in
+    * and written in batches, the icons of each batch are fetched concurrently before it is written.
+    * Each batch is also written to the layer GeoPackage, which is indexed before the layer is
+    * marked as loaded.
+    */
+   suspend fun loadFeatures(layer: Layer) = withContext(Dispatchers.IO) {
       try {
          if (!layer.isLoaded) {
-               layer.downloadId = 1L
-               layerLocalDataSource.update(layer)
-
-               Log.i(LOG_NAME, "Loading static features for layer " + layer.name + ".")
-               val features = fetchFeatures(layer)
-
-               // Pull down the icons
-               val failedIconUrls = mutableListOf<String>()
-               features
-                  .mapNotNull { feature ->
-                     feature.propertiesMap["styleiconstyleiconhref"]?.let { url ->
-                        feature to url.key
-                     }
-                  }
-                  .forEach { (feature, url) ->
-                     if (url != null) {
-                        var iconFile: File? = null
-                        try {
-                           val iconUrl = URL(url)
-                           var filename = iconUrl.file
-                           // remove leading /
-                           if (filename != null) {
-                              filename = filename.trim { it <= ' ' }
-                              while (filename!!.startsWith("/")) {
-                                 filename = filename.substring(1)
-                              }
-                           }
-                           iconFile = File(application.filesDir.toString() + "/icons/staticfeatures", filename)
-                           if (!iconFile.exists()) {
-                              iconFile.parentFile?.mkdirs()
-                              iconFile.createNewFile()
-                              val inputStream = fetchFeatureIcon(url)
-                              if (inputStream != null) {
-                                 ByteStreams.copy(inputStream, FileOutputStream(iconFile))
-                                 feature.localPath = iconFile.absolutePath
-                              }
-                           } else {
-                              feature.localPath = iconFile.absolutePath
-                           }
-                        } catch (e: java.lang.Exception) {
-                           // this block should never flow exceptions up! Log for now.
-                           Log.w(LOG_NAME, "Could not get icon.", e)
-                           failedIconUrls.add(url)
-                           if (iconFile != null && iconFile.exists()) {
-                              iconFile.delete()
-                           }
-                        }
-                     }
-                  }
-
-               val updatedLayer = featureLocalDataSource.createAll(features, layer)
-               try {
-                  updatedLayer.isLoaded = true
-                  updatedLayer.downloadId = null
-                  layerLocalDataSource.update(updatedLayer)
-               } catch (e: java.lang.Exception) {
-                  throw StaticFeatureException("Unable to update the layer to loaded: " + layer.name)
-               }
-               Log.i(LOG_NAME, "Loaded static features for layer " + layer.name)
+            layer.downloadId = 1L
+            layerLocalDataSource.update(layer)
+
+            Log.i(LOG_NAME, "Loading static features for layer " + layer.name + ".")
+
+            // remove anything left over from an interrupted load
+            featureLocalDataSource.deleteAll(layer.id)
+            staticFeatureGeoPackage.create(layer)
+            val count = fetchFeatures(layer)
+            staticFeatureGeoPackage.index(layer)
+
+            val updatedLayer = featureLocalDataSource.setLoaded(layer)
+            try {
+               updatedLayer.isLoaded = true
+               updatedLayer.downloadId = null
+               layerLocalDataSource.update(updatedLayer)
+            } catch (e: java.lang.Exception) {
+               throw StaticFeatureException("Unable to update the layer to loaded: " + layer.name)
+            }
+            Log.i(LOG_NAME, "Loaded $count static features for layer " + layer.name)
          }
       } catch (e: Exception) {
          Log.e(LOG_NAME, "Problem loading layers.", e)
       }
    }
 
-   private suspend fun fetchFeatures(layer: Layer): List<StaticFeature> {
+   private suspend fun fetchFeatures(layer: Layer): Int {
       val response = layerService.getFeatures(layer.event.remoteId, layer.remoteId)
-      return if (response.isSuccessful) {
-         response.body()?.features()?.map { json ->
-            val staticFeature = StaticFeature()
-            staticFeature.remoteId = json.id()
-            staticFeature.layer = layer
-            staticFeature.geometry = json.geometry()?.let { GeometryConverter.convert(it) }
-            staticFeature.properties = json.properties()?.let { fromJsonProperties(it) } ?: emptyList()
-            staticFeature
-         } ?: emptyList()
-      } else {
+      val body = response.body()
+      if (!response.isSuccessful || body == null) {
          Log.e(LOG_NAME, "Error fetching static features")
-         if (response.errorBody() != null) {
-            response.errorBody()?.let { body ->
-               Log.e(LOG_NAME, body.string())
-            }
+         response.errorBody()?.let { error ->
+            Log.e(LOG_NAME, error.string())
          }
 
-         emptyList()
+         return 0
       }
+
+      var count = 0
+      val icons = mutableMapOf<String, String?>()
+      body.byteStream().use { input ->
+         StaticFeatureReader(layer).read(input).chunked(FEATURE_BATCH_SIZE).forEach { features ->
+            val urls = features.mapNotNull { iconUrl(it) }.distinct().filterNot { icons.containsKey(it) }
+            icons.putAll(fetchFeatureIcons(urls))
+
+            features.forEach { feature ->
+               iconUrl(feature)?.let { feature.localPath = icons[it] }
+            }
+
+            count += featureLocalDataSource.createBatch(features)
+            staticFeatureGeoPackage.insert(layer, features)
+         }
+      }
+
+      return count
    }
 
-   private fun fromJsonProperties(json: JsonObject): Collection<StaticFeatureProperty> {
-      return parseProperties(json, "")
+   private fun iconUrl(feature: StaticFeature): String? {
+      return feature.propertiesMap["styleiconstyleiconhref"]?.value
    }
 
-   private fun parseProperties(
-      json: JsonObject,
-      prefix: String
-   ): Collection<StaticFeatureProperty> {
-      return json.asMap().map { (key, value) ->
-         val keyWithPrefix = "$prefix${key.lowercase()}"
-         if (value.isJsonObject) {
-            parseProperties(value.asJsonObject, keyWithPrefix)
-         } else {
-            if (!value.isJsonNull) {
-               listOf(StaticFeatureProperty(keyWithPrefix, value.asString))
-            } else emptyList()
+   /**
+    * Download icons that are not already on disk, at most [MAX_CONCURRENT_ICON_DOWNLOADS] at once.
+    *
+    * @return local path for each url, null if the icon could not be downloaded
+    */
+   private suspend fun fetchFeatureIcons(urls: Collection<String>): Map<String, String?> = coroutineScope {
+      val semaphore = Semaphore(MAX_CONCURRENT_ICON_DOWNLOADS)
+      urls.map { url ->
+         async {
+            semaphore.withPermit { url to fetchFeatureIconFile(url)?.absolutePath }
+         }
+      }.awaitAll().toMap()
+   }
+
+   private suspend fun fetchFeatureIconFile(url: String): File? {
+      var temp: File? = null
+      return try {
+         // remove leading /
+         val filename = URL(url).file.trim { it <= ' ' }.trimStart('/')
+         val iconFile = File(application.filesDir.toString() + "/icons/staticfeatures", filename)
+         if (!iconFile.exists()) {
+            iconFile.parentFile?.mkdirs()
+            val inputStream = fetchFeatureIcon(url) ?: return null
+
+            // write next to the icon and rename so a partially written icon is never used
+            val download = File(iconFile.parentFile, "${iconFile.name}.tmp")
+            temp = download
+            inputStream.use { input ->
+               download.outputStream().use { output -> input.copyTo(output) }
+            }
+            if (!download.renameTo(iconFile)) {
+               Log.w(LOG_NAME, "Could not move icon to $iconFile")
+               download.delete()
+               return null
+            }
          }
-      }.flatten()
+
+         iconFile
+      } catch (e: Exception) {
+         // this block should never flow exceptions up! Log for now.
+         Log.w(LOG_NAME, "Could not get icon.", e)
+         temp?.delete()
+         null
+      }
    }
 
    companion object {
       private val LOG_NAME = LayerRepository::class.java.simpleName
+
+      private const val FEATURE_BATCH_SIZE = 500
+      private const val MAX_CONCURRENT_ICON_DOWNLOADS = 4
    }
 }
\ No newline at end of file
@@ -19,11 +19,11 @@ import mil.nga.giat.mage.di.TokenProvider
 import mil.nga.giat.mage.filter.DateTimeFilter
 import mil.nga.giat.mage.filter.Filter
 import mil.nga.giat.mage.location.LocationAccess
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
 import mil.nga.giat.mage.network.location.LocationService
 import mil.nga.giat.mage.sdk.Temporal
 import mil.nga.giat.mage.database.model.location.Location
 import mil.nga.giat.mage.data.datasource.location.LocationLocalDataSource
-import mil.nga.giat.mage.database.model.location.LocationProperty
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
 import mil.nga.giat.mage.database.model.user.User
 import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
@@ -31,7 +31,7 @@ import mil.nga.giat.mage.sdk.event.ILocationEventListener
 import mil.nga.giat.mage.sdk.exceptions.LocationException
 import mil.nga.giat.mage.sdk.exceptions.UserException
 import mil.nga.sf.Point
-import java.sql.SQLException
+import java.net.HttpURLConnection
 import java.util.*
 import javax.inject.Inject
 
@@ -40,6 +40,7 @@ class LocationRepository @Inject constructor(
    private val preferences: SharedPreferences,
    private val locationAccess: LocationAccess,
    private val locationService: LocationService,
+   private val conditionalRequestInterceptor: ConditionalRequestInterceptor,
    private val userRepository: UserRepository,
    private val tokenProvider: TokenProvider,
    private val userLocalDataSource: UserLocalDataSource,
@@ -56,55 +57,6 @@ class LocationRepository @Inject constructor(
       Log.v(LOG_NAME, "Saving GPS location to database.")
 
       if (gpsLocation.time > 0) {
-         val locationProperties = ArrayList<LocationProperty>()
-
-         locationProperties.add(
-            LocationProperty(
-               "accuracy",
-               gpsLocation.accuracy
-            )
-         )
-         locationProperties.add(
-            LocationProperty(
-               "bearing",
-               gpsLocation.bearing
-            )
-         )
-         locationProperties.add(
-            LocationProperty(
-               "speed",
-               gpsLocation.speed
-            )
-         )
-         locationProperties.add(
-            LocationProperty(
-               "provider",
-               gpsLocation.provider
-            )
-         )
-         locationProperties.add(
-            LocationProperty(
-               "altitude",
-               gpsLocation.altitude
-            )
-         )
-         locationProperties.add(
-            LocationProperty(
-               "accuracy_type",
-               if (locationAccess.isPreciseLocationGranted()) "PRECISE" else "COARSE"
-            )
-         )
-
-         val level = batteryStatus?.getIntExtra(BatteryManager.EXTRA_LEVEL, -1)
-         level?.let {
-            locationProperties.add(
-               LocationProperty(
-                  "battery_level",
-                  it
-               )
-            )
-         }
-
          var user: User? = null
          try {
             user = userLocalDataSource.readCurrentUser()
@@ -117,11 +69,18 @@ class LocationRepository @Inject constructor(
                val location = Location(
                   "Feature",
                   user,
-                  locationProperties,
+                  null,
                   Point(gpsLocation.longitude, gpsLocation.latitude),
                   Date(gpsLocation.time),
                   user.currentEvent
                )
+               location.accuracy = gpsLocation.accuracy
+               location.bearing = gpsLocation.bearing
+               location.speed = gpsLocation.speed
+               location.provider = gpsLocation.provider
+               location.altitude = gpsLocation.altitude
+               location.accuracyType = if (locationAccess.isPreciseLocationGranted()) "PRECISE" else "COARSE"
+               location.batteryLevel = batteryStatus?.getIntExtra(BatteryManager.EXTRA_LEVEL, -1)
 
                locationLocalDataSource.create(location)
             } catch (e: LocationException) {
@@ -142,8 +101,7 @@ class LocationRepository @Inject constructor(
 
       var success = true
       var locations = locationLocalDataSource.getCurrentUserLocations(currentUser, LOCATION_PUSH_BATCH_SIZE, false)
-      // TODO: when locations can't be pushed, this condition never becomes false to terminate the loop
-      while (locations.isNotEmpty()) {
+      while (success && locations.isNotEmpty()) {
 
          // Send locations for the current event
          val event = locations[0].event
@@ -156,29 +114,15 @@ class LocationRepository @Inject constructor(
                // We've sync-ed locations to the server, lets remove the locations we synced from the database
                Log.d(LOG_NAME, "Pushed " + pushedLocations.size + " locations.")
                try {
-                  localLocations.forEachIndexed { index, localLocation ->
-                     val remoteId = pushedLocations.getOrNull(index)?.remoteId
-                     if (remoteId == null) {
-                        locationLocalDataSource.delete(listOf(localLocation))
-                     } else {
-                        localLocation.remoteId = remoteId
-                        locationLocalDataSource.update(localLocation)
-                     }
-                  }
-
-                  val syncedLocations = locationLocalDataSource.getSyncedLocations(currentUser, event)
-
-                  if (syncedLocations.size > minNumberOfLocationsToKeep) {
-                     val locationsToDelete = syncedLocations.subList(minNumberOfLocationsToKeep, syncedLocations.size)
-
-                     try {
-                        locationLocalDataSource.delete(locationsToDelete)
-                     } catch (e: LocationException) {
-                        Log.e(LOG_NAME, "Could not delete locations.", e)
-                     }
+                  val remoteIds = localLocations.withIndex().associate { (index, localLocation) ->
+                     localLocation to pushedLocations.getOrNull(index)?.remoteId
                   }
-               } catch (e: SQLException) {
-                  Log.e(LOG_NAME, "Problem deleting locations.", e)
+                  val deleted = locationLocalDataSource.syncPushedLocations(currentUser, event, remoteIds, minNumberOfLocationsToKeep)
+                  Log.d(LOG_NAME, "Removed $deleted rejected or old locations.")
+               } catch (e: LocationException) {
+                  // the batch is still unsynced locally, stop rather than push it again
+                  Log.e(LOG_NAME, "Problem updating pushed locations.", e)
+                  success = false
                }
             } else {
                Log.e(LOG_NAME, "Failed to push locations.")
@@ -191,6 +135,7 @@ class LocationRepository @Inject constructor(
             locations = locationLocalDataSource.getCurrentUserLocations(currentUser, LOCATION_PUSH_BATCH_SIZE, false)
          } catch (e: Exception) {
             Log.e(LOG_NAME, "Failed to push user locations to the server", e)
+            success = false
          }
       }
       success
@@ -310,54 +255,65 @@ class LocationRepository @Inject constructor(
       return preferences.getInt(context.resources.getString(R.string.activeLocationTimeFilterKey), context.resources.getInteger(R.integer.time_filter_last_month))
    }
 
-   suspend fun fetch() = withContext(Dispatchers.IO) {
-      val currentEvent = eventLocalDataSource.currentEvent ?: return@withContext
-      val currentUser = userLocalDataSource.readCurrentUser() ?: return@withContext
+   /**
+    * Fetch the latest location for each user in the current event.
+    *
+    * @return true if any new location was saved
+    */
+   suspend fun fetch(): Boolean = withContext(Dispatchers.IO) {
+      val currentEvent = eventLocalDataSource.currentEvent ?: return@withContext false
+      val currentUser = userLocalDataSource.readCurrentUser() ?: return@withContext false
+      var changed = false
 
       try {
          val response = locationService.getLocations(currentEvent.remoteId)
-         if (response.isSuccessful) {
+         if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            Log.d(LOG_NAME, "User locations not modified")
+         } else if (response.isSuccessful) {
             val locations = response.body()?.flatMap { (_, locations) ->
                locations.forEach { it.event = currentEvent }
                locations
             } ?: emptyList()
 
-            locations.forEach { location ->
-               // make sure that the user exists and is persisted in the local data-store
-               var userId: String? = null
-               val userIdProperty = location.propertiesMap["userId"]
-               if (userIdProperty != null) {
-                  userId = userIdProperty.value.toString()
-               }
-               if (userId != null) {
-                  var user: User? = userLocalDataSource.read(userId)
-                  if (user == null) {
-                     // get any users that were not recognized or expired
-                     Log.d(LOG_NAME, "User for location is null or stale, re-pulling")
-                     userRepository.fetchUsers(listOf(userId))
-                     user = userLocalDataSource.read(userId)
-                  }
-                  location.user = user
+            // resolve locations we already have in one query
+            val existing = locationLocalDataSource.readRemoteIds(locations.mapNotNull { it.remoteId })
+            val newLocations = locations
+               .filter { it.remoteId != null && !existing.contains(it.remoteId) }
+               .sortedByDescending { it.timestamp }
+               .groupBy { location -> location.propertiesMap["userId"]?.value?.toString() }
+               .mapValues { (_, locations) -> locations.first() }
+
+            // make sure that the users exist and are persisted in the local data-store
+            val userIds = newLocations.keys.filterNotNull()
+            val users = userLocalDataSource.read(userIds).associateBy { it.remoteId }.toMutableMap()
+            val unknownUserIds = userIds.filter { !users.containsKey(it) }
+            if (unknownUserIds.isNotEmpty()) {
+               // get any users that were not recognized or expired
+               Log.d(LOG_NAME, "${unknownUserIds.size} users for locations are unknown, re-pulling")
+               userRepository.fetchUsers(unknownUserIds)
+               users.putAll(userLocalDataSource.read(unknownUserIds).associateBy { it.remoteId })
+            }
 
-                  // if there is no existing location, create one
-                  val existingLocation = locationLocalDataSource.read(location.remoteId)
-                  if (existingLocation == null) {
-                     // delete old location and create new one
-                     if (user != null && user != currentUser) {
-                        // don't pull your own locations
-                        userId = user.id.toString()
-                        val newLocation = locationLocalDataSource.create(location)
-                        locationLocalDataSource.deleteUserLocations(userId, true, newLocation.event)
-                     } else {
-                        Log.w(LOG_NAME, "A location with no user was found and discarded.  User id: $userId")
-                     }
-                  }
+            val replacements = newLocations.mapNotNull { (userId, location) ->
+               val user = users[userId]
+               if (user != null && user != currentUser) {
+                  // don't pull your own locations
+                  location.user = user
+                  location
+               } else {
+                  if (user == null) Log.w(LOG_NAME, "A location with no user was found and discarded.  User id: $userId")
+                  null
                }
             }
+
+            changed = locationLocalDataSource.replaceUserLocations(currentEvent, replacements).isNotEmpty()
+            conditionalRequestInterceptor.commit(response.raw().request.url)
          }
       } catch(e: Exception) {
          Log.e(LOG_NAME, "Failed to fetch user locations from server", e)
       }
+
+      changed
    }
 
    companion object {
@@ -36,6 +36,7 @@ import mil.nga.giat.mage.filter.Filter
 import mil.nga.giat.mage.form.FieldType
 import mil.nga.giat.mage.form.Form
 import mil.nga.giat.mage.form.field.Media
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
 import mil.nga.giat.mage.network.observation.ObservationService
 import mil.nga.giat.mage.sdk.Temporal
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
@@ -54,6 +55,7 @@ class ObservationRepository @Inject constructor(
    @ApplicationContext private val context: Context,
    private val preferences: SharedPreferences,
    private val observationService: ObservationService,
+   private val conditionalRequestInterceptor: ConditionalRequestInterceptor,
    private val userRepository: UserRepository,
    private val userLocalDataSource: UserLocalDataSource,
    private val eventLocalDataSource: EventLocalDataSource,
@@ -346,18 +348,26 @@ class ObservationRepository @Inject constructor(
       response
    }
 
-   suspend fun fetch(notify: Boolean) = withContext(Dispatchers.IO) {
+   /**
+    * Fetch observations modified since the latest clean local observation.
+    *
+    * @return true if any observation was created, updated or deleted
+    */
+   suspend fun fetch(notify: Boolean): Boolean = withContext(Dispatchers.IO) {
       val fetched = mutableListOf<Observation>()
+      var changed = false
 
-      val currentUser = userLocalDataSource.readCurrentUser() ?: return@withContext
-      val currentEvent = eventLocalDataSource.currentEvent ?: return@withContext
+      val currentUser = userLocalDataSource.readCurrentUser() ?: return@withContext false
+      val currentEvent = eventLocalDataSource.currentEvent ?: return@withContext false
       Log.d(LOG_NAME, "Fetch observations for event " + currentEvent.name)
 
       try {
          val lastModifiedDate = observationLocalDataSource.getLatestCleanLastModified(currentUser, currentEvent)
          val iso8601Format = ISO8601DateFormatFactory.ISO8601()
          val response = observationService.getObservations(currentEvent.remoteId, iso8601Format.format(lastModifiedDate))
-         if (response.isSuccessful) {
+         if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            Log.d(LOG_NAME, "Observations not modified")
+         } else if (response.isSuccessful) {
             val observations = response.body()?.map {
                it.event = currentEvent
                it
@@ -365,38 +375,43 @@ class ObservationRepository @Inject constructor(
 
             Log.d(LOG_NAME, "Fetched " + observations.size + " new observations")
 
+            // get any users that were not recognized or expired in one resolve
+            val sixHoursInMilliseconds = (6 * 60 * 60 * 1000).toLong()
+            val staleUserIds = observations.mapNotNull { it.userId }.distinct().filter { userId ->
+               val user = userLocalDataSource.read(userId)
+               user == null || Date().after(Date(user.fetchedDate.time + sixHoursInMilliseconds))
+            }
+            if (staleUserIds.isNotEmpty()) {
+               Log.d(LOG_NAME, "Users for observations are null or stale, re-pulling " + staleUserIds.size)
+               userRepository.fetchUsers(staleUserIds)
+            }
+
             val iterator = observations.iterator()
             while(iterator.hasNext()) {
                val observation = iterator.next()
 
-               observation.userId?.let { userId ->
-                  val user = userLocalDataSource.read(userId)
-                  // TODO : test the timer to make sure users are updated as needed!
-                  val sixHoursInMilliseconds = (6 * 60 * 60 * 1000).toLong()
-                  if (user == null || Date().after(Date(user.fetchedDate.time + sixHoursInMilliseconds))) {
-                     // get any users that were not recognized or expired
-                     Log.d(LOG_NAME, "User for observation is null or stale, re-pulling")
-                     userRepository.fetchUsers(listOf(userId))
-                  }
-               }
-
                val oldObservation = observationLocalDataSource.read(observation.remoteId)
                if (observation.state == State.ARCHIVE && oldObservation != null) {
                   observationLocalDataSource.delete(oldObservation)
+                  changed = true
                   Log.d(LOG_NAME, "Deleted observation with remote_id " + observation.remoteId)
                } else if (observation.state != State.ARCHIVE && oldObservation == null) {
                   observationLocalDataSource.create(observation, false)?.let {
                      fetched.add(it)
+                     changed = true
                      Log.d(LOG_NAME, "Created observation with remote_id " + it.remoteId)
                   }
                } else if (observation.state != State.ARCHIVE && oldObservation != null && !oldObservation.isDirty) { // TODO : conflict resolution
                   observation.id = oldObservation.id
+                  changed = changed || observation.lastModified != oldObservation.lastModified
                   observationLocalDataSource.update(observation)
                   Log.d(LOG_NAME, "Updated observation with remote_id " + observation.remoteId)
                }
 
                iterator.remove()
             }
+
+            conditionalRequestInterceptor.commit(response.raw().request.url)
          }
       } catch(e: Exception) {
          Log.e(LOG_NAME, "Failed to fetch observations from the server", e)
@@ -405,6 +420,8 @@ class ObservationRepository @Inject constructor(
       if (notify) {
          createNotifications(fetched)
       }
+
+      changed
    }
 
    private fun createNotifications(observations: Collection<Observation>) {
@@ -11,6 +11,11 @@ import com.google.gson.Gson
 import com.google.gson.JsonObject
 import com.google.gson.stream.JsonReader
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import mil.nga.giat.mage.R
 import mil.nga.giat.mage.data.datasource.permission.RoleLocalDataSource
@@ -22,6 +27,7 @@ import mil.nga.giat.mage.network.user.UserService
 import mil.nga.giat.mage.sdk.Compatibility.Companion.isCompatibleWith
 import mil.nga.giat.mage.database.model.event.Event
 import mil.nga.giat.mage.database.model.user.User
+import mil.nga.giat.mage.data.datasource.user.IconValidators
 import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
 import mil.nga.giat.mage.database.dao.MageSqliteOpenHelper
 import mil.nga.giat.mage.network.user.UserWithRoleTypeAdapter
@@ -32,12 +38,15 @@ import mil.nga.giat.mage.sdk.utils.MediaUtility
 import mil.nga.giat.mage.sdk.utils.PasswordUtility
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
 import okhttp3.RequestBody
-import okhttp3.ResponseBody
 import retrofit2.Response
 import java.io.File
+import java.io.IOException
 import java.io.StringReader
+import java.net.HttpURLConnection
+import java.security.MessageDigest
 import java.util.Base64
 import java.util.Date
+import java.util.concurrent.Executors
 import javax.inject.Inject
 
 class UserRepository @Inject constructor(
@@ -48,7 +57,8 @@ class UserRepository @Inject constructor(
    private val deviceService: DeviceService,
    private val tokenProvider: TokenProvider,
    private val roleLocalDataSource: RoleLocalDataSource,
-   private val userLocalDataSource: UserLocalDataSource
+   private val userLocalDataSource: UserLocalDataSource,
+   private val userResolver: UserResolver
 ) {
 
    suspend fun authenticateLocal(strategy: String, username: String, password: String): AuthenticationStatus {
@@ -231,21 +241,7 @@ class UserRepository @Inject constructor(
    }
 
    suspend fun fetchUsers(ids: List<String>) {
-      ids.filter { it != "-1" }.forEach { id ->
-         try {
-            val response = userService.getUser(id)
-            if (response.isSuccessful) {
-               response.body()?.let { (user, role) ->
-                  roleLocalDataSource.read(role.remoteId).let { user.role = it }
-                  user.fetchedDate = Date()
-                  roleLocalDataSource.createOrUpdate(role)
-                  userLocalDataSource.createOrUpdate(user)
-               }
-            }
-         } catch (e: Exception) {
-            Log.e(LOG_NAME, "Error fetching user", e)
-         }
-      }
+      userResolver.resolve(ids)
    }
 
    suspend fun changePassword(
@@ -294,81 +290,132 @@ class UserRepository @Inject constructor(
       }
    }
 
+   /**
+    * Sync the icons of all users in the event. Icons are requested with the validators of the
+    * last download so unchanged icons are skipped, changed icons download in parallel and are
+    * scaled on a dedicated pool.
+    */
    suspend fun syncIcons(event: Event) = withContext(Dispatchers.IO) {
       val users = userLocalDataSource.getUsersInEvent(event)
-      for (user in users) {
-         try {
-            syncIcon(user)
-         } catch (e: Exception) {
-            Log.e(LOG_NAME, "Error syncing user icon", e)
+      val semaphore = Semaphore(MAX_CONCURRENT_ICON_DOWNLOADS)
+      val updated = users.map { user ->
+         async {
+            semaphore.withPermit {
+               try {
+                  syncIcon(user)
+               } catch (e: Exception) {
+                  Log.e(LOG_NAME, "Error syncing user icon", e)
+                  false
+               }
+            }
          }
-      }
+      }.awaitAll().count { it }
+
+      Log.d(LOG_NAME, "Synced icons for ${users.size} users, $updated changed")
    }
 
-   private suspend fun syncIcon(user: User) {
+   private suspend fun syncIcon(user: User): Boolean {
       val path = "${MediaUtility.getUserIconDirectory(application)}/${user.id}.png"
       val file = File(path)
-      if (file.exists()) {
-         file.delete()
+
+      val validators = if (file.exists() && user.iconPath != null) {
+         IconValidators.from(user.userLocal)
+      } else IconValidators()
+
+      val response = userService.getIcon(user.remoteId, validators.etag, validators.lastModified)
+      if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+         return false
       }
 
-      val response = userService.getIcon(user.remoteId)
       val body = response.body()
-      if (response.isSuccessful && body != null) {
-         saveIcon(body, file)
-         compressIcon(file)
-         userLocalDataSource.setIconPath(user, path)
+      if (!response.isSuccessful || body == null) {
+         return false
       }
-   }
 
-   private fun saveIcon(body: ResponseBody, file: File) {
-      body.let {
-         it.byteStream().use { input ->
-            file.outputStream().use { output ->
-               input.copyTo(output)
-            }
-         }
+      val bytes = body.use { it.bytes() }
+      val latest = IconValidators(
+         etag = response.headers()["ETag"],
+         lastModified = response.headers()["Last-Modified"],
+         hash = hash(bytes)
+      )
+
+      if (latest.hash == validators.hash) {
+         userLocalDataSource.setIconValidators(user, latest)
+         return false
       }
+
+      val compressed = withContext(iconDispatcher) {
+         compressIcon(bytes, file)
+      }
+      if (!compressed) {
+         Log.e(LOG_NAME, "Could not save icon for user ${user.remoteId}")
+         return false
+      }
+
+      userLocalDataSource.setIconPath(user, path, latest)
+      return true
    }
 
-   private fun compressIcon(file: File) {
-      val sampleSize = getSampleSize(file)
+   /**
+    * Decode, downsample and write the icon to file.
+    *
+    * @return false if the icon could not be decoded or written, file is left unchanged
+    */
+   private fun compressIcon(bytes: ByteArray, file: File): Boolean {
+      val options = BitmapFactory.Options()
+      options.inSampleSize = getSampleSize(bytes)
+      val bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.size, options) ?: return false
+
+      // write next to the icon and rename so a partially written icon is never displayed
+      val temp = File(file.parentFile, "${file.name}.tmp")
+      val saved = try {
+         temp.outputStream().use { outputStream ->
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream)
+         } && temp.renameTo(file)
+      } catch (e: IOException) {
+         Log.e(LOG_NAME, "Could not write icon $file", e)
+         false
+      } finally {
+         bitmap.recycle()
+      }
 
-      file.inputStream().use { inputStream ->
-         val options = BitmapFactory.Options()
-         options.inSampleSize = sampleSize
-         val bitmap = BitmapFactory.decodeStream(inputStream, null, options)
-         bitmap?.let {
-            file.outputStream().use { outputStream ->
-               it.compress(Bitmap.CompressFormat.PNG, 100, outputStream)
-            }
-         }
+      if (!saved) {
+         temp.delete()
       }
+
+      return saved
+   }
+
+   private fun hash(bytes: ByteArray): String {
+      return MessageDigest.getInstance("SHA-256").digest(bytes).joinToString("") { "%02x".format(it) }
    }
 
-   private fun getSampleSize(file: File): Int {
+   private fun getSampleSize(bytes: ByteArray): Int {
       val options = BitmapFactory.Options()
       options.inJustDecodeBounds = true
-      return file.inputStream().use { inputStream ->
-         BitmapFactory.decodeStream(inputStream, null, options)
-
-         val height = options.outHeight
-         val width = options.outWidth
-         var inSampleSize = 1
-         if (height > MAX_DIMENSION || width > MAX_DIMENSION) {
-            // Calculate the largest inSampleSize value that is a power of 2 and will ensure
-            // height and width is smaller than the max image we can process
-            while (height / inSampleSize >= MAX_DIMENSION && height / inSampleSize >= MAX_DIMENSION) {
-               inSampleSize *= 2
-            }
+      BitmapFactory.decodeByteArray(bytes, 0, bytes.size, options)
+
+      val height = options.outHeight
+      val width = options.outWidth
+      var inSampleSize = 1
+      if (height > MAX_DIMENSION || width > MAX_DIMENSION) {
+         // Calculate the largest inSampleSize value that is a power of 2 and will ensure
+         // height and width is smaller than the max image we can process
+         while (height / inSampleSize >= MAX_DIMENSION && height / inSampleSize >= MAX_DIMENSION) {
+            inSampleSize *= 2
          }
-
-         inSampleSize
       }
+
+      return inSampleSize
    }
 
    companion object {
       private val LOG_NAME = UserRepository::class.java.name
       private const val MAX_DIMENSION = 200
+      private const val MAX_CONCURRENT_ICON_DOWNLOADS = 8
+
+      private val iconDispatcher = Executors.newFixedThreadPool(
+         Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+      ).asCoroutineDispatcher()
    }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package mil.nga.giat.mage.data.repository.user
+
+import android.os.SystemClock
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import mil.nga.giat.mage.data.datasource.permission.RoleLocalDataSource
+import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
+import mil.nga.giat.mage.database.model.user.User
+import mil.nga.giat.mage.network.user.UserService
+import mil.nga.giat.mage.network.user.UserWithRole
+import mil.nga.giat.mage.sdk.exceptions.UserException
+import java.net.HttpURLConnection
+import java.util.Date
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Resolves users by remote id from the server.
+ *
+ * Concurrent requests for the same user share one in flight request, at most
+ * [MAX_CONCURRENT_REQUESTS] requests run at once, and users the server does not know are not
+ * asked for again until [NOT_FOUND_TTL] has passed. Each batch of fetched users is saved with a
+ * single bulk upsert.
+ */
+@Singleton
+class UserResolver @Inject constructor(
+   private val userService: UserService,
+   private val roleLocalDataSource: RoleLocalDataSource,
+   private val userLocalDataSource: UserLocalDataSource
+) {
+   private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+   private val semaphore = Semaphore(MAX_CONCURRENT_REQUESTS)
+   private val inFlight = ConcurrentHashMap<String, Deferred<Map<String, User>>>()
+   private val notFound = ConcurrentHashMap<String, Long>()
+
+   /**
+    * Fetch and save the given users.
+    *
+    * @return the saved users
+    */
+   suspend fun resolve(remoteIds: Collection<String>): List<User> = withContext(Dispatchers.IO) {
+      val now = SystemClock.elapsedRealtime()
+      val ids = remoteIds
+         .filter { it != "-1" }
+         .distinct()
+         .filter { id -> notFound[id]?.let { it < now } ?: true }
+
+      if (ids.isEmpty()) return@withContext emptyList()
+
+      // ids already being fetched by another caller are waited on rather than requested again
+      val owned = mutableListOf<String>()
+      val batch = CompletableDeferred<Map<String, User>>()
+      val requests = ids.map { id ->
+         inFlight.computeIfAbsent(id) {
+            owned.add(id)
+            batch
+         }
+      }
+
+      if (owned.isNotEmpty()) {
+         try {
+            val fetched = owned.map { id ->
+               scope.async { semaphore.withPermit { fetch(id) } }
+            }.awaitAll().filterNotNull()
+
+            batch.complete(save(fetched).associateBy { it.remoteId })
+         } finally {
+            batch.complete(emptyMap())
+            owned.forEach { inFlight.remove(it, batch) }
+         }
+      }
+
+      val resolved = requests.distinct().awaitAll().fold(emptyMap<String, User>()) { acc, users -> acc + users }
+      ids.mapNotNull { resolved[it] }
+   }
+
+   fun clear() {
+      notFound.clear()
+   }
+
+   private suspend fun fetch(id: String): UserWithRole? {
+      return try {
+         val response = userService.getUser(id)
+         if (response.isSuccessful) {
+            notFound.remove(id)
+            response.body()
+         } else {
+            if (response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+               notFound[id] = SystemClock.elapsedRealtime() + NOT_FOUND_TTL
+            }
+            null
+         }
+      } catch (e: Exception) {
+         Log.e(LOG_NAME, "Error fetching user $id", e)
+         null
+      }
+   }
+
+   private fun save(fetched: List<UserWithRole>): List<User> {
+      if (fetched.isEmpty()) return emptyList()
+
+      val roles = fetched
+         .map { it.role }
+         .distinctBy { it.remoteId }
+         .associate { role -> role.remoteId to roleLocalDataSource.createOrUpdate(role) }
+
+      val users = fetched.map { (user, role) ->
+         user.role = roles[role.remoteId]
+         user.fetchedDate = Date()
+         user
+      }
+
+      return try {
+         userLocalDataSource.createOrUpdate(users)
+      } catch (e: UserException) {
+         Log.e(LOG_NAME, "Error saving users", e)
+         emptyList()
+      }
+   }
+
+   companion object {
+      private val LOG_NAME = UserResolver::class.java.name
+
+      private const val MAX_CONCURRENT_REQUESTS = 4
+      private const val NOT_FOUND_TTL = 60 * 60 * 1000L
+   }
+}
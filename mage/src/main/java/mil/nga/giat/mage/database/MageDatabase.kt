@@ -3,6 +3,8 @@ package mil.nga.giat.mage.database
 import androidx.room.Database
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
 import mil.nga.giat.mage.database.dao.feed.FeedDao
 import mil.nga.giat.mage.database.dao.feed.FeedItemDao
 import mil.nga.giat.mage.database.dao.feed.FeedLocalDao
@@ -29,7 +31,36 @@ import mil.nga.giat.mage.database.model.settings.Settings
 abstract class MageDatabase : RoomDatabase() {
 
     companion object {
-        const val VERSION = 2
+        const val VERSION = 5
+
+        val MIGRATION_2_3 = object : Migration(2, 3) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE feed_item ADD COLUMN hash TEXT")
+            }
+        }
+
+        val MIGRATION_3_4 = object : Migration(3, 4) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE feed_item ADD COLUMN min_x REAL")
+                db.execSQL("ALTER TABLE feed_item ADD COLUMN min_y REAL")
+                db.execSQL("ALTER TABLE feed_item ADD COLUMN max_x REAL")
+                db.execSQL("ALTER TABLE feed_item ADD COLUMN max_y REAL")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_feed_item_feed_id_min_x_max_x_min_y_max_y` ON `feed_item` (`feed_id`, `min_x`, `max_x`, `min_y`, `max_y`)")
+
+                // bounds are computed when items are synced, force existing items to be rewritten
+                db.execSQL("UPDATE feed_item SET hash = NULL")
+                db.execSQL("UPDATE feed_local SET last_sync = NULL")
+            }
+        }
+
+        val MIGRATION_4_5 = object : Migration(4, 5) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE feed_local ADD COLUMN next_sync INTEGER")
+                db.execSQL("ALTER TABLE feed_local ADD COLUMN last_sync_duration INTEGER")
+                db.execSQL("ALTER TABLE feed_local ADD COLUMN item_count INTEGER")
+                db.execSQL("ALTER TABLE feed_local ADD COLUMN failures INTEGER NOT NULL DEFAULT 0")
+            }
+        }
     }
 
     abstract fun settingsDao(): SettingsDao
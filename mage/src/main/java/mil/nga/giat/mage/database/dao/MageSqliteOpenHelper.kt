@@ -6,6 +6,7 @@ import android.util.Log
 import com.j256.ormlite.android.apptools.OrmLiteSqliteOpenHelper
 import com.j256.ormlite.field.DataPersisterManager
 import com.j256.ormlite.support.ConnectionSource
+import com.j256.ormlite.support.DatabaseConnection
 import com.j256.ormlite.table.TableUtils
 import mil.nga.giat.mage.database.model.event.Event
 import mil.nga.giat.mage.database.model.event.Form
@@ -27,6 +28,9 @@ import mil.nga.giat.mage.database.model.team.TeamEvent
 import mil.nga.giat.mage.database.model.user.User
 import mil.nga.giat.mage.database.model.user.UserLocal
 import mil.nga.giat.mage.database.model.user.UserTeam
+import java.io.ByteArrayInputStream
+import java.io.ObjectInputStream
+import java.io.Serializable
 import java.sql.SQLException
 import kotlin.Int
 import kotlin.Throws
@@ -52,7 +56,6 @@ class MageSqliteOpenHelper(
       TableUtils.createTable(connectionSource, UserTeam::class.java)
       TableUtils.createTable(connectionSource, TeamEvent::class.java)
       TableUtils.createTable(connectionSource, Location::class.java)
-      TableUtils.createTable(connectionSource, LocationProperty::class.java)
       TableUtils.createTable(connectionSource, Layer::class.java)
       TableUtils.createTable(connectionSource, StaticFeature::class.java)
       TableUtils.createTable(connectionSource, StaticFeatureProperty::class.java)
@@ -84,7 +87,12 @@ class MageSqliteOpenHelper(
       TableUtils.dropTable<UserTeam, Long>(connectionSource, UserTeam::class.java, true)
       TableUtils.dropTable<TeamEvent, Long>(connectionSource, TeamEvent::class.java, true)
       TableUtils.dropTable<Location, Long>(connectionSource, Location::class.java, true)
-      TableUtils.dropTable<LocationProperty, Long>(connectionSource, LocationProperty::class.java, true)
+      val connection = connectionSource.getReadWriteConnection(null)
+      try {
+         connection.executeStatement("DROP TABLE IF EXISTS $LEGACY_LOCATION_PROPERTY_TABLE", DatabaseConnection.DEFAULT_RESULT_FLAGS)
+      } finally {
+         connectionSource.releaseConnection(connection)
+      }
       TableUtils.dropTable<Layer, Long>(connectionSource, Layer::class.java, true)
       TableUtils.dropTable<StaticFeature, Long>(connectionSource, StaticFeature::class.java, true)
       TableUtils.dropTable<StaticFeatureProperty, Long>(connectionSource, StaticFeatureProperty::class.java, true)
@@ -96,7 +104,108 @@ class MageSqliteOpenHelper(
       oldVersion: Int,
       newVersion: Int
    ) {
-      resetDatabase()
+      if (oldVersion < MIN_MIGRATION_VERSION) {
+         resetDatabase()
+         return
+      }
+
+      try {
+         if (oldVersion < LOCATION_COLUMNS_VERSION) {
+            migrateLocationProperties(database)
+         }
+
+         if (oldVersion < USER_ICON_VALIDATORS_VERSION) {
+            migrateUserIconValidators(database)
+         }
+      } catch (e: Exception) {
+         // migrations run in the upgrade transaction, recreating the tables in that same
+         // transaction replaces any partially migrated tables along with the version bump
+         Log.e(LOG_NAME, "Could not migrate database from version $oldVersion, resetting.", e)
+         dropTables()
+         createTables()
+      }
+   }
+
+   override fun onDowngrade(database: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
+      if (oldVersion == UNRELEASED_STATIC_FEATURE_BOUNDS_VERSION && newVersion == USER_ICON_VALIDATORS_VERSION) {
+         // development builds added static feature bounds as version 25, the unused columns are
+         // left in place and ignored, only their index is dropped
+         database.execSQL("DROP INDEX IF EXISTS staticfeatures_bounds_idx")
+         return
+      }
+
+      super.onDowngrade(database, oldVersion, newVersion)
+   }
+
+   /**
+    * Move location properties out of their own table and into typed columns on the
+    * location, properties that do not have a column are kept in the extra properties.
+    */
+   private fun migrateLocationProperties(database: SQLiteDatabase) {
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_ACCURACY} FLOAT")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_BEARING} FLOAT")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_SPEED} FLOAT")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_ALTITUDE} DOUBLE PRECISION")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_PROVIDER} VARCHAR")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_ACCURACY_TYPE} VARCHAR")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_BATTERY_LEVEL} INTEGER")
+      database.execSQL("ALTER TABLE ${Location.TABLE_NAME} ADD COLUMN ${Location.COLUMN_NAME_EXTRA_PROPERTIES} TEXT")
+
+      val statement = database.compileStatement(
+         "UPDATE ${Location.TABLE_NAME} SET " +
+            "${Location.COLUMN_NAME_ACCURACY} = ?, ${Location.COLUMN_NAME_BEARING} = ?, ${Location.COLUMN_NAME_SPEED} = ?, " +
+            "${Location.COLUMN_NAME_ALTITUDE} = ?, ${Location.COLUMN_NAME_PROVIDER} = ?, ${Location.COLUMN_NAME_ACCURACY_TYPE} = ?, " +
+            "${Location.COLUMN_NAME_BATTERY_LEVEL} = ?, ${Location.COLUMN_NAME_EXTRA_PROPERTIES} = ? WHERE _id = ?"
+      )
+
+      fun update(locationId: Long, properties: List<LocationProperty>) {
+         val location = Location()
+         location.properties = properties
+
+         statement.clearBindings()
+         location.accuracy?.let { statement.bindDouble(1, it.toDouble()) }
+         location.bearing?.let { statement.bindDouble(2, it.toDouble()) }
+         location.speed?.let { statement.bindDouble(3, it.toDouble()) }
+         location.altitude?.let { statement.bindDouble(4, it) }
+         location.provider?.let { statement.bindString(5, it) }
+         location.accuracyType?.let { statement.bindString(6, it) }
+         location.batteryLevel?.let { statement.bindLong(7, it.toLong()) }
+         location.extraProperties?.let { statement.bindString(8, it) }
+         statement.bindLong(9, locationId)
+         statement.executeUpdateDelete()
+      }
+
+      statement.use {
+         database.rawQuery("SELECT location_id, key, value FROM $LEGACY_LOCATION_PROPERTY_TABLE ORDER BY location_id", null).use { cursor ->
+            var locationId: Long? = null
+            val properties = mutableListOf<LocationProperty>()
+            while (cursor.moveToNext()) {
+               val id = cursor.getLong(0)
+               if (id != locationId) {
+                  locationId?.let { update(it, properties) }
+                  locationId = id
+                  properties.clear()
+               }
+
+               val value = try {
+                  ObjectInputStream(ByteArrayInputStream(cursor.getBlob(2))).use { it.readObject() as? Serializable }
+               } catch (e: Exception) { null }
+               value?.let { properties.add(LocationProperty(cursor.getString(1), it)) }
+            }
+            locationId?.let { update(it, properties) }
+         }
+      }
+
+      database.execSQL("DROP TABLE IF EXISTS $LEGACY_LOCATION_PROPERTY_TABLE")
+   }
+
+   /**
+    * Add the validators of the last downloaded user icon so unchanged icons are not downloaded again.
+    */
+   private fun migrateUserIconValidators(database: SQLiteDatabase) {
+      database.execSQL("ALTER TABLE userlocal ADD COLUMN ${UserLocal.COLUMN_NAME_ICON_ETAG} VARCHAR")
+      database.execSQL("ALTER TABLE userlocal ADD COLUMN ${UserLocal.COLUMN_NAME_ICON_LAST_MODIFIED} VARCHAR")
+      database.execSQL("ALTER TABLE userlocal ADD COLUMN ${UserLocal.COLUMN_NAME_ICON_HASH} VARCHAR")
    }
 
    /**
@@ -117,6 +226,12 @@ class MageSqliteOpenHelper(
       private const val DATABASE_NAME = "mage.db"
       private val LOG_NAME = MageSqliteOpenHelper::class.java.name
 
-      const val DATABASE_VERSION = 22
+      const val DATABASE_VERSION = 24
+
+      private const val MIN_MIGRATION_VERSION = 22
+      private const val LOCATION_COLUMNS_VERSION = 23
+      private const val USER_ICON_VALIDATORS_VERSION = 24
+      private const val UNRELEASED_STATIC_FEATURE_BOUNDS_VERSION = 25
+      private const val LEGACY_LOCATION_PROPERTY_TABLE = "location_properties"
    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package mil.nga.giat.mage.database.dao.feed
 
 import androidx.lifecycle.LiveData
 import androidx.room.*
+import kotlinx.coroutines.flow.Flow
 import mil.nga.giat.mage.database.model.feed.Feed
 import mil.nga.giat.mage.database.model.feed.FeedWithItems
 
@@ -35,6 +36,9 @@ interface FeedDao {
     @Query("SELECT * FROM feed WHERE id = :feedId")
     fun feed(feedId: String): LiveData<Feed>
 
+    @Query("SELECT * FROM feed WHERE id = :feedId")
+    fun observeFeed(feedId: String): Flow<Feed?>
+
     @Query("SELECT * FROM feed WHERE id IN(:feedIds)")
     fun feeds(feedIds: List<String>): LiveData<List<Feed>>
 
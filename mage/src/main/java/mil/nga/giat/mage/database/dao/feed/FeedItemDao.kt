@@ -5,6 +5,7 @@ import androidx.paging.PagingSource
 import androidx.room.*
 import kotlinx.coroutines.flow.Flow
 import mil.nga.giat.mage.database.model.feed.FeedItem
+import mil.nga.giat.mage.database.model.feed.FeedItemHash
 import mil.nga.giat.mage.database.model.feed.FeedWithItems
 import mil.nga.giat.mage.database.model.feed.ItemWithFeed
 
@@ -24,6 +25,26 @@ interface FeedItemDao {
     @Update(onConflict = OnConflictStrategy.IGNORE)
     fun update(item: FeedItem)
 
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(items: List<FeedItem>)
+
+    @Update
+    fun updateAll(items: List<FeedItem>)
+
+    /**
+     * Apply a feed item diff in a single transaction. Deletes are issued in batches to stay
+     * under the SQLite bound variable limit.
+     */
+    @Transaction
+    fun sync(feedId: String, inserted: List<FeedItem>, updated: List<FeedItem>, removedIds: Collection<String>) {
+        removedIds.chunked(MAX_BOUND_VARIABLES).forEach { ids ->
+            deleteFeedItems(feedId, ids)
+        }
+
+        updateAll(updated)
+        insertAll(inserted)
+    }
+
     @Query("SELECT * FROM feed_item WHERE feed_id = :feedId")
     fun items(feedId: String): LiveData<List<FeedItem>>
 
@@ -34,6 +55,12 @@ interface FeedItemDao {
     @Query("SELECT * FROM feed WHERE id = :feedId")
     fun feedWithItems(feedId: String): LiveData<FeedWithItems>
 
+    /**
+     * Items whose bounding box intersects the given bounds, newest first.
+     */
+    @Query("SELECT * FROM feed_item WHERE feed_id = :feedId AND min_x <= :maxX AND max_x >= :minX AND min_y <= :maxY AND max_y >= :minY ORDER BY timestamp DESC LIMIT :limit")
+    fun itemsInBounds(feedId: String, minX: Double, minY: Double, maxX: Double, maxY: Double, limit: Int): Flow<List<FeedItem>>
+
     @Query("SELECT * FROM feed_item WHERE feed_id = :feedId ORDER BY timestamp DESC, id ASC")
     fun pagingSource(feedId: String): PagingSource<Int, FeedItem>
 
@@ -46,9 +73,16 @@ interface FeedItemDao {
     @Query("DELETE FROM feed_item WHERE feed_id = :feedId")
     fun removeFeedItems(feedId: String)
 
-    @Query("DELETE FROM feed_item WHERE feed_id = :feedId AND id NOT IN (:itemIds)")
-    fun preserveFeedItems(feedId: String, itemIds: List<String>)
+    @Query("SELECT id, hash FROM feed_item WHERE feed_id = :feedId")
+    fun itemHashes(feedId: String): List<FeedItemHash>
+
+    @Query("DELETE FROM feed_item WHERE feed_id = :feedId AND id IN (:itemIds)")
+    fun deleteFeedItems(feedId: String, itemIds: List<String>)
 
     @Query("DELETE FROM feed_item")
     fun destroy()
+
+    companion object {
+        const val MAX_BOUND_VARIABLES = 500
+    }
 }
\ No newline at end of file
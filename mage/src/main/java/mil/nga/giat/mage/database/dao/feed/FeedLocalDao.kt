@@ -20,6 +20,9 @@ interface FeedLocalDao {
     @Update(onConflict = OnConflictStrategy.IGNORE)
     fun update(feed: FeedLocal)
 
+    @Query("SELECT * FROM feed_local WHERE feed_id = :feedId")
+    fun getFeedLocal(feedId: String): FeedLocal?
+
     @Transaction
     @Query("SELECT * FROM feed WHERE event_remote_id = :eventId")
     fun getFeeds(eventId: String): List<FeedAndLocal>
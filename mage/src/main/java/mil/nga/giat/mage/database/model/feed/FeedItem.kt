@@ -3,6 +3,7 @@ package mil.nga.giat.mage.database.model.feed
 import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.ForeignKey
+import androidx.room.Index
 import com.google.gson.JsonElement
 import com.google.gson.annotations.SerializedName
 import mil.nga.sf.Geometry
@@ -14,6 +15,9 @@ import mil.nga.sf.Geometry
          parentColumns = ["id"],
          childColumns = ["feed_id"],
          onDelete = ForeignKey.CASCADE)
+   ],
+   indices = [
+      Index(value = ["feed_id", "min_x", "max_x", "min_y", "max_y"])
    ]
 )
 data class FeedItem(
@@ -34,6 +38,22 @@ data class FeedItem(
 ) {
    @ColumnInfo(name = "timestamp")
    var timestamp: Long? = null
+
+   @ColumnInfo(name = "hash")
+   var hash: String? = null
+
+   // bounding box of the geometry, used to query the items in the visible map region
+   @ColumnInfo(name = "min_x")
+   var minX: Double? = null
+
+   @ColumnInfo(name = "min_y")
+   var minY: Double? = null
+
+   @ColumnInfo(name = "max_x")
+   var maxX: Double? = null
+
+   @ColumnInfo(name = "max_y")
+   var maxY: Double? = null
 }
 
 @Entity(tableName = "feed_item",
@@ -0,0 +1,11 @@
+package mil.nga.giat.mage.database.model.feed
+
+import androidx.room.ColumnInfo
+
+data class FeedItemHash(
+   @ColumnInfo(name = "id")
+   val id: String,
+
+   @ColumnInfo(name = "hash")
+   val hash: String?
+)
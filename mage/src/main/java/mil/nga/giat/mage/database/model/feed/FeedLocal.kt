@@ -17,4 +17,16 @@ data class FeedLocal(
 ) {
     @ColumnInfo(name = "last_sync")
     var lastSync: Long? = null
+
+    @ColumnInfo(name = "next_sync")
+    var nextSync: Long? = null
+
+    @ColumnInfo(name = "last_sync_duration")
+    var lastSyncDuration: Long? = null
+
+    @ColumnInfo(name = "item_count")
+    var itemCount: Int? = null
+
+    @ColumnInfo(name = "failures", defaultValue = "0")
+    var failures: Int = 0
 }
\ No newline at end of file
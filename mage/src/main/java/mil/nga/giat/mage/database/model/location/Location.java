@@ -4,17 +4,21 @@ import androidx.annotation.NonNull;
 
 import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
-import com.j256.ormlite.field.ForeignCollectionField;
 import com.j256.ormlite.table.DatabaseTable;
 
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import mil.nga.giat.mage.sdk.Temporal;
@@ -23,18 +27,28 @@ import mil.nga.giat.mage.database.model.user.User;
 import mil.nga.giat.mage.sdk.utils.GeometryUtilityKt;
 import mil.nga.sf.Geometry;
 
-@DatabaseTable(tableName = "locations")
+@DatabaseTable(tableName = Location.TABLE_NAME)
 public class Location implements Comparable<Location>, Temporal {
 
+	public static final String TABLE_NAME = "locations";
+	public static final String COLUMN_NAME_REMOTE_ID = "remote_id";
 	public static final String COLUMN_NAME_USER_ID = "user_id";
 	public static final String COLUMN_NAME_EVENT_ID = "event_id";
 	public static final String COLUMN_NAME_TIMESTAMP = "timestamp";
+	public static final String COLUMN_NAME_ACCURACY = "accuracy";
+	public static final String COLUMN_NAME_BEARING = "bearing";
+	public static final String COLUMN_NAME_SPEED = "speed";
+	public static final String COLUMN_NAME_ALTITUDE = "altitude";
+	public static final String COLUMN_NAME_PROVIDER = "provider";
+	public static final String COLUMN_NAME_ACCURACY_TYPE = "accuracy_type";
+	public static final String COLUMN_NAME_BATTERY_LEVEL = "battery_level";
+	public static final String COLUMN_NAME_EXTRA_PROPERTIES = "extra_properties";
 
 	// name _id needed for cursor adapters
 	@DatabaseField(generatedId = true)
 	private Long _id;
 
-	@DatabaseField(unique = true, columnName = "remote_id")
+	@DatabaseField(unique = true, columnName = COLUMN_NAME_REMOTE_ID)
 	private String remoteId;
 
 	@DatabaseField(canBeNull = false, foreign = true, foreignAutoRefresh = true, columnName = COLUMN_NAME_USER_ID)
@@ -55,8 +69,33 @@ public class Location implements Comparable<Location>, Temporal {
 	@DatabaseField
 	private String type;
 
-	@ForeignCollectionField(eager = true)
-	private Collection<LocationProperty> properties  = new ArrayList();
+	/**
+	 * Fixed telemetry reported with every fix is stored in typed columns, anything
+	 * else the server sends is kept as json in the extra properties column.
+	 */
+	@DatabaseField(columnName = COLUMN_NAME_ACCURACY)
+	private Float accuracy;
+
+	@DatabaseField(columnName = COLUMN_NAME_BEARING)
+	private Float bearing;
+
+	@DatabaseField(columnName = COLUMN_NAME_SPEED)
+	private Float speed;
+
+	@DatabaseField(columnName = COLUMN_NAME_ALTITUDE)
+	private Double altitude;
+
+	@DatabaseField(columnName = COLUMN_NAME_PROVIDER)
+	private String provider;
+
+	@DatabaseField(columnName = COLUMN_NAME_ACCURACY_TYPE)
+	private String accuracyType;
+
+	@DatabaseField(columnName = COLUMN_NAME_BATTERY_LEVEL)
+	private Integer batteryLevel;
+
+	@DatabaseField(columnName = COLUMN_NAME_EXTRA_PROPERTIES, dataType = DataType.LONG_STRING)
+	private String extraProperties;
 
 	@DatabaseField(columnName = "geometry", canBeNull = false, dataType = DataType.BYTE_ARRAY)
 	private byte[] geometryBytes;
@@ -78,7 +117,7 @@ public class Location implements Comparable<Location>, Temporal {
 		this.user = user;
 		this.lastModified = lastModified;
 		this.type = type;
-		this.properties = properties;
+		setProperties(properties);
 		this.geometryBytes = GeometryUtilityKt.toBytes(geometry);
 		this.timestamp = timestamp;
 		this.event = event;
@@ -133,12 +172,160 @@ public class Location implements Comparable<Location>, Temporal {
 		this.event = event;
 	}
 
+	public Float getAccuracy() {
+		return accuracy;
+	}
+
+	public void setAccuracy(Float accuracy) {
+		this.accuracy = accuracy;
+	}
+
+	public Float getBearing() {
+		return bearing;
+	}
+
+	public void setBearing(Float bearing) {
+		this.bearing = bearing;
+	}
+
+	public Float getSpeed() {
+		return speed;
+	}
+
+	public void setSpeed(Float speed) {
+		this.speed = speed;
+	}
+
+	public Double getAltitude() {
+		return altitude;
+	}
+
+	public void setAltitude(Double altitude) {
+		this.altitude = altitude;
+	}
+
+	public String getProvider() {
+		return provider;
+	}
+
+	public void setProvider(String provider) {
+		this.provider = provider;
+	}
+
+	public String getAccuracyType() {
+		return accuracyType;
+	}
+
+	public void setAccuracyType(String accuracyType) {
+		this.accuracyType = accuracyType;
+	}
+
+	public Integer getBatteryLevel() {
+		return batteryLevel;
+	}
+
+	public void setBatteryLevel(Integer batteryLevel) {
+		this.batteryLevel = batteryLevel;
+	}
+
+	public String getExtraProperties() {
+		return extraProperties;
+	}
+
+	public void setExtraProperties(String extraProperties) {
+		this.extraProperties = extraProperties;
+	}
+
+	/**
+	 * Key/value view of the typed telemetry columns and extra properties.
+	 *
+	 * @return
+	 */
 	public Collection<LocationProperty> getProperties() {
+		List<LocationProperty> properties = new ArrayList<>();
+		addProperty(properties, COLUMN_NAME_ACCURACY, accuracy);
+		addProperty(properties, COLUMN_NAME_BEARING, bearing);
+		addProperty(properties, COLUMN_NAME_SPEED, speed);
+		addProperty(properties, COLUMN_NAME_ALTITUDE, altitude);
+		addProperty(properties, COLUMN_NAME_PROVIDER, provider);
+		addProperty(properties, COLUMN_NAME_ACCURACY_TYPE, accuracyType);
+		addProperty(properties, COLUMN_NAME_BATTERY_LEVEL, batteryLevel);
+
+		if (extraProperties != null) {
+			try {
+				JSONObject json = new JSONObject(extraProperties);
+				Iterator<String> keys = json.keys();
+				while (keys.hasNext()) {
+					String key = keys.next();
+					Object value = json.opt(key);
+					if (value instanceof Serializable && value != JSONObject.NULL) {
+						properties.add(new LocationProperty(key, (Serializable) value));
+					}
+				}
+			} catch (JSONException ignore) {}
+		}
+
 		return properties;
 	}
 
+	/**
+	 * Splits the given properties into the typed telemetry columns, anything that does
+	 * not fit a column is kept in the extra properties.
+	 *
+	 * @param properties
+	 */
 	public void setProperties(Collection<LocationProperty> properties) {
-		this.properties = properties;
+		accuracy = null;
+		bearing = null;
+		speed = null;
+		altitude = null;
+		provider = null;
+		accuracyType = null;
+		batteryLevel = null;
+
+		Map<String, Object> extra = new HashMap<>();
+		if (properties != null) {
+			for (LocationProperty property : properties) {
+				String key = property.getKey();
+				Serializable value = property.getValue();
+				if (key == null || value == null) continue;
+
+				Number number = value instanceof Number ? (Number) value : null;
+				switch (key) {
+					case COLUMN_NAME_ACCURACY:
+						if (number != null) { accuracy = number.floatValue(); continue; }
+						break;
+					case COLUMN_NAME_BEARING:
+						if (number != null) { bearing = number.floatValue(); continue; }
+						break;
+					case COLUMN_NAME_SPEED:
+						if (number != null) { speed = number.floatValue(); continue; }
+						break;
+					case COLUMN_NAME_ALTITUDE:
+						if (number != null) { altitude = number.doubleValue(); continue; }
+						break;
+					case COLUMN_NAME_BATTERY_LEVEL:
+						if (number != null) { batteryLevel = number.intValue(); continue; }
+						break;
+					case COLUMN_NAME_PROVIDER:
+						provider = value.toString();
+						continue;
+					case COLUMN_NAME_ACCURACY_TYPE:
+						accuracyType = value.toString();
+						continue;
+				}
+
+				extra.put(key, value);
+			}
+		}
+
+		extraProperties = extra.isEmpty() ? null : new JSONObject(extra).toString();
+	}
+
+	private static void addProperty(List<LocationProperty> properties, String key, Serializable value) {
+		if (value != null) {
+			properties.add(new LocationProperty(key, value));
+		}
 	}
 
 	public byte[] getGeometryBytes() {
@@ -164,7 +351,7 @@ public class Location implements Comparable<Location>, Temporal {
 	 */
 	public final Map<String, LocationProperty> getPropertiesMap() {
 	     Map<String, LocationProperty> propertiesMap = new HashMap<String, LocationProperty>();
-	        for (LocationProperty property : properties) {
+	        for (LocationProperty property : getProperties()) {
 	            propertiesMap.put(property.getKey(), property);
 	        }
 
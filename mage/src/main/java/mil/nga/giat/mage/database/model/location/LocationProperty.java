@@ -1,32 +1,20 @@
 package mil.nga.giat.mage.database.model.location;
 
-import com.j256.ormlite.field.DatabaseField;
-import com.j256.ormlite.table.DatabaseTable;
-
 import java.io.Serializable;
 
 import mil.nga.giat.mage.database.model.Property;
 
-@DatabaseTable(tableName = "location_properties")
+/**
+ * Key/value view of a location property. Properties are no longer persisted in their own
+ * table, they are stored in typed columns and an extra properties column on {@link Location}.
+ */
 public class LocationProperty extends Property {
 
-	@DatabaseField(foreign = true, uniqueCombo = true)
-	private Location location;
-
 	public LocationProperty() {
-		// ORMLite needs a no-arg constructor
 	}
 
 	public LocationProperty(String pKey, Serializable pValue) {
 		super(pKey, pValue);
 	}
 
-	public Location getLocation() {
-		return location;
-	}
-
-	public void setLocation(Location location) {
-		this.location = location;
-	}
-
 }
@@ -16,6 +16,9 @@ public class UserLocal {
 	public static final String COLUMN_NAME_CURRENT_EVENT = "current_event";
 	public static final String COLUMN_NAME_AVATAR_PATH = "avatar_path";
 	public static final String COLUMN_NAME_ICON_PATH = "icon_path";
+	public static final String COLUMN_NAME_ICON_ETAG = "icon_etag";
+	public static final String COLUMN_NAME_ICON_LAST_MODIFIED = "icon_last_modified";
+	public static final String COLUMN_NAME_ICON_HASH = "icon_hash";
 
 	@DatabaseField(generatedId = true, columnName = COLUMN_NAME_ID)
 	private Long id;
@@ -32,6 +35,15 @@ public class UserLocal {
 	@DatabaseField(columnName = COLUMN_NAME_ICON_PATH)
 	private String localIconPath;
 
+	@DatabaseField(columnName = COLUMN_NAME_ICON_ETAG)
+	private String iconETag;
+
+	@DatabaseField(columnName = COLUMN_NAME_ICON_LAST_MODIFIED)
+	private String iconLastModified;
+
+	@DatabaseField(columnName = COLUMN_NAME_ICON_HASH)
+	private String iconHash;
+
 	public UserLocal() {
 		// ORMLite needs a no-arg constructor
 	}
@@ -76,6 +88,30 @@ public class UserLocal {
 		this.localIconPath = localIconPath;
 	}
 
+	public String getIconETag() {
+		return iconETag;
+	}
+
+	public void setIconETag(String iconETag) {
+		this.iconETag = iconETag;
+	}
+
+	public String getIconLastModified() {
+		return iconLastModified;
+	}
+
+	public void setIconLastModified(String iconLastModified) {
+		this.iconLastModified = iconLastModified;
+	}
+
+	public String getIconHash() {
+		return iconHash;
+	}
+
+	public void setIconHash(String iconHash) {
+		this.iconHash = iconHash;
+	}
+
 	@Override
 	public boolean equals(Object object) {
 		if (this == object)
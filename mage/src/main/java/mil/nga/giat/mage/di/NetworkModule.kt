@@ -16,6 +16,11 @@ import dagger.hilt.components.SingletonComponent
 import mil.nga.giat.mage.network.gson.AnnotationExclusionStrategy
 import mil.nga.giat.mage.network.gson.DateTimestampTypeAdapter
 import mil.nga.giat.mage.network.geojson.GeometryTypeAdapterFactory
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
+import mil.nga.giat.mage.network.GzipRequestInterceptor
+import mil.nga.giat.mage.network.HttpCache
+import mil.nga.giat.mage.network.StaleIfOfflineInterceptor
+import mil.nga.giat.mage.network.metrics.NetworkMetrics
 import mil.nga.giat.mage.network.LiveDataCallAdapterFactory
 import mil.nga.giat.mage.network.Server
 import mil.nga.giat.mage.network.api.*
@@ -66,6 +71,10 @@ import javax.inject.Singleton
 @Retention(AnnotationRetention.BINARY)
 annotation class Server5
 
+@Qualifier
+@Retention(AnnotationRetention.BINARY)
+annotation class TileClient
+
 data class UserAgentHeader(
    val name: String = "User-Agent",
    val value: String
@@ -116,13 +125,47 @@ class NetworkModule {
    @Singleton
    @Provides
    fun provideOkHttpClient(
-      tokenInterceptor: Interceptor
+      tokenInterceptor: Interceptor,
+      conditionalRequestInterceptor: ConditionalRequestInterceptor,
+      gzipRequestInterceptor: GzipRequestInterceptor,
+      staleIfOfflineInterceptor: StaleIfOfflineInterceptor,
+      httpCache: HttpCache,
+      networkMetrics: NetworkMetrics
    ): OkHttpClient {
       return OkHttpClient.Builder()
          .connectTimeout(60, TimeUnit.SECONDS)
          .readTimeout(60, TimeUnit.SECONDS)
          .writeTimeout(60, TimeUnit.SECONDS)
+         .cache(httpCache.api)
+         .eventListenerFactory(networkMetrics)
          .addInterceptor(tokenInterceptor)
+         .addInterceptor(conditionalRequestInterceptor)
+         .addInterceptor(gzipRequestInterceptor)
+         .addInterceptor(staleIfOfflineInterceptor)
+         .build()
+   }
+
+   /**
+    * Client for third party map tiles, no MAGE credentials and a separate cache partition.
+    */
+   @Singleton
+   @Provides
+   @TileClient
+   fun provideTileOkHttpClient(
+      userAgentHeader: UserAgentHeader,
+      staleIfOfflineInterceptor: StaleIfOfflineInterceptor,
+      httpCache: HttpCache,
+      networkMetrics: NetworkMetrics
+   ): OkHttpClient {
+      return OkHttpClient.Builder()
+         .connectTimeout(60, TimeUnit.SECONDS)
+         .readTimeout(60, TimeUnit.SECONDS)
+         .cache(httpCache.tiles)
+         .eventListenerFactory(networkMetrics)
+         .addInterceptor { chain ->
+            chain.proceed(chain.request().newBuilder().header(userAgentHeader.name, userAgentHeader.value).build())
+         }
+         .addInterceptor(staleIfOfflineInterceptor)
          .build()
    }
 
@@ -14,7 +14,6 @@ import mil.nga.giat.mage.database.model.geojson.StaticFeature
 import mil.nga.giat.mage.database.model.geojson.StaticFeatureProperty
 import mil.nga.giat.mage.database.model.layer.Layer
 import mil.nga.giat.mage.database.model.location.Location
-import mil.nga.giat.mage.database.model.location.LocationProperty
 import mil.nga.giat.mage.database.model.observation.Attachment
 import mil.nga.giat.mage.database.model.observation.Observation
 import mil.nga.giat.mage.database.model.observation.ObservationFavorite
@@ -94,12 +93,6 @@ class OrmLiteModule {
         return daoStore.getDao(Location::class.java)
     }
 
-    @Provides
-    @Singleton
-    fun provideLocationPropertyDao(daoStore: MageSqliteOpenHelper): Dao<LocationProperty, Long> {
-        return daoStore.getDao(LocationProperty::class.java)
-    }
-
     @Provides
     @Singleton
     fun provideObservationDao(daoStore: MageSqliteOpenHelper): Dao<Observation, Long> {
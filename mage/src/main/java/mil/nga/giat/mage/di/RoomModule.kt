@@ -21,6 +21,7 @@ class RoomModule {
     @Singleton
     fun provideDatabase(application: Application): MageDatabase {
         return Room.databaseBuilder(application.applicationContext, MageDatabase::class.java, "mage")
+                .addMigrations(MageDatabase.MIGRATION_2_3, MageDatabase.MIGRATION_3_4, MageDatabase.MIGRATION_4_5)
                 .fallbackToDestructiveMigration()
                 .build()
     }
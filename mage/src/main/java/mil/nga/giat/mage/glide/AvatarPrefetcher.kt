@@ -0,0 +1,70 @@
+package mil.nga.giat.mage.glide
+
+import android.content.Context
+import android.util.Log
+import com.bumptech.glide.Priority
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.launch
+import mil.nga.giat.mage.database.model.user.User
+import mil.nga.giat.mage.glide.model.Avatar
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Background queue that warms the Glide cache with user avatars.
+ *
+ * Avatars are downloaded at low priority by a couple of workers so a large team sync does not
+ * compete with the rest of the app for the network. An avatar that was already prefetched at the
+ * same version is not queued again.
+ */
+@Singleton
+class AvatarPrefetcher @Inject constructor(
+   @ApplicationContext private val context: Context
+) {
+   private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+   private val queue = Channel<Avatar>(Channel.UNLIMITED)
+   private val prefetched = ConcurrentHashMap.newKeySet<Avatar>()
+
+   init {
+      repeat(WORKERS) {
+         scope.launch {
+            for (avatar in queue) {
+               prefetch(avatar)
+            }
+         }
+      }
+   }
+
+   fun enqueue(users: Collection<User>) {
+      users
+         .filter { it.avatarUrl != null }
+         .map { Avatar.forUser(it) }
+         .filter { prefetched.add(it) }
+         .forEach { queue.trySend(it) }
+   }
+
+   private fun prefetch(avatar: Avatar) {
+      try {
+         GlideApp.with(context)
+            .download(avatar)
+            .priority(Priority.LOW)
+            .submit(MAX_AVATAR_DIMENSION, MAX_AVATAR_DIMENSION)
+            .get()
+      } catch (e: Exception) {
+         prefetched.remove(avatar)
+         Log.w(LOG_NAME, "Error prefetching avatar ${avatar.remoteUri}", e)
+      }
+   }
+
+   companion object {
+      private val LOG_NAME = AvatarPrefetcher::class.java.name
+
+      private const val WORKERS = 2
+      private const val MAX_AVATAR_DIMENSION = 1024
+   }
+}
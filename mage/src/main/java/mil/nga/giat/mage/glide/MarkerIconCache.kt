@@ -0,0 +1,134 @@
+package mil.nga.giat.mage.glide
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.drawable.Drawable
+import android.util.LruCache
+import android.util.TypedValue
+import androidx.annotation.MainThread
+import androidx.core.graphics.drawable.toBitmap
+import com.bumptech.glide.Glide
+import com.bumptech.glide.load.Transformation
+import com.bumptech.glide.request.target.CustomTarget
+import com.bumptech.glide.request.transition.Transition
+import com.google.android.gms.maps.model.BitmapDescriptor
+import com.google.android.gms.maps.model.BitmapDescriptorFactory
+import com.google.android.gms.maps.model.Marker
+import dagger.hilt.android.qualifiers.ApplicationContext
+import mil.nga.giat.mage.R
+import mil.nga.giat.mage.map.annotation.IconStyle
+import mil.nga.giat.mage.map.annotation.MapAnnotation
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Process wide cache of marker icons.
+ *
+ * Markers that share an icon, size and transformations share one decoded bitmap and one
+ * BitmapDescriptor. Loads for the same icon are only started once, markers that ask for an icon
+ * that is already loading wait for that load. The cache is bounded by bitmap size and released
+ * when the system is low on memory.
+ */
+@Singleton
+class MarkerIconCache @Inject constructor(
+   @ApplicationContext private val context: Context
+) {
+   data class Key(
+      val icon: Any?,
+      val width: Int,
+      val height: Int,
+      val transformations: List<Transformation<Bitmap>>
+   )
+
+   private class Icon(val descriptor: BitmapDescriptor, val byteCount: Int)
+   private class Waiting(val marker: Marker, val visible: Boolean)
+
+   private val icons = object : LruCache<Key, Icon>(MAX_SIZE_BYTES) {
+      override fun sizeOf(key: Key, value: Icon) = value.byteCount
+   }
+
+   private val loading = mutableMapOf<Key, MutableList<Waiting>>()
+
+   /**
+    * Set the marker icon for the annotation, loading it through Glide if it is not cached.
+    *
+    * @param dimension icon width and height in dp
+    */
+   @MainThread
+   fun load(
+      marker: Marker,
+      annotation: MapAnnotation<*>,
+      dimension: Int,
+      transformations: List<Transformation<Bitmap>> = emptyList(),
+      visible: Boolean = true
+   ) {
+      val size = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dimension.toFloat(), context.resources.displayMetrics).toInt()
+      val key = Key(icon(annotation), size, size, transformations)
+
+      icons.get(key)?.let { icon ->
+         setIcon(Waiting(marker, visible), icon.descriptor)
+         return
+      }
+
+      loading[key]?.let { waiting ->
+         waiting.add(Waiting(marker, visible))
+         return
+      }
+
+      loading[key] = mutableListOf(Waiting(marker, visible))
+      Glide.with(context)
+         .asBitmap()
+         .load(annotation)
+         .error(R.drawable.default_marker)
+         .transform(*transformations.toTypedArray())
+         .into(IconTarget(key))
+   }
+
+   fun onTrimMemory(level: Int) {
+      if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+         icons.evictAll()
+      } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+         icons.trimToSize(icons.maxSize() / 2)
+      }
+   }
+
+   private fun icon(annotation: MapAnnotation<*>): Any? {
+      val style = annotation.style as? IconStyle ?: return null
+      return style.uri ?: if (annotation.allowEmptyIcon) EMPTY_ICON else null
+   }
+
+   private fun setIcon(waiting: Waiting, descriptor: BitmapDescriptor) {
+      val marker = waiting.marker
+      if (marker.tag != null) {  // if tag is null marker has been removed from map
+         marker.setIcon(descriptor)
+         marker.isVisible = waiting.visible
+      }
+   }
+
+   private inner class IconTarget(private val key: Key) : CustomTarget<Bitmap>(key.width, key.height) {
+      override fun onResourceReady(resource: Bitmap, transition: Transition<in Bitmap>?) {
+         val descriptor = BitmapDescriptorFactory.fromBitmap(resource)
+         icons.put(key, Icon(descriptor, resource.allocationByteCount))
+         loading.remove(key)?.forEach { setIcon(it, descriptor) }
+      }
+
+      override fun onLoadFailed(errorDrawable: Drawable?) {
+         // failed loads are not cached so the icon is requested again by the next marker
+         val waiting = loading.remove(key)
+         if (errorDrawable != null) {
+            val descriptor = BitmapDescriptorFactory.fromBitmap(errorDrawable.toBitmap())
+            waiting?.forEach { setIcon(it, descriptor) }
+         }
+      }
+
+      override fun onLoadCleared(placeholder: Drawable?) {
+         loading.remove(key)
+      }
+   }
+
+   companion object {
+      private const val MAX_SIZE_BYTES = 8 * 1024 * 1024
+      private const val EMPTY_ICON = "empty"
+   }
+}
@@ -11,13 +11,21 @@ import com.bumptech.glide.load.resource.bitmap.BitmapTransformation
 import mil.nga.giat.mage.R
 import java.nio.charset.Charset
 import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
 
+/**
+ * Draws a dot colored by the age of the location below the user icon. The age bucket is fixed
+ * when the transformation is created, transformations in the same bucket are equal so each user
+ * icon is drawn once per bucket.
+ */
 class LocationAgeTransformation(
     private val context: Context,
-    private val timestamp: Long?,
+    timestamp: Long?,
 ) : BitmapTransformation() {
+    private val ageBucket = ageBucket(timestamp)
+
     override fun transform(pool: BitmapPool, toTransform: Bitmap, width: Int, height: Int): Bitmap {
-        val dot = createDot(pool, context)
+        val dot = dot(context)
 
         val combinedWidth = dot.width.coerceAtLeast(toTransform.width)
         val combinedHeight = dot.height / 2 + toTransform.height
@@ -31,14 +39,17 @@ class LocationAgeTransformation(
         return bitmap
     }
 
-    private fun createDot(pool: BitmapPool, context: Context): Bitmap {
+    private fun dot(context: Context): Bitmap {
         val color = locationColor()
+        return dots.getOrPut(color) { createDot(context, color) }
+    }
 
+    private fun createDot(context: Context, color: Int): Bitmap {
         val density = context.resources.displayMetrics.density
         val dimension = (DOT_DIMENSION * density).toInt()
         val radius = (DOT_RADIUS * density).toInt()
 
-        val bitmap = pool.get(dimension, dimension, Bitmap.Config.ARGB_8888)
+        val bitmap = Bitmap.createBitmap(dimension, dimension, Bitmap.Config.ARGB_8888)
 
         val canvas = Canvas(bitmap)
         val paint = Paint()
@@ -54,39 +65,30 @@ class LocationAgeTransformation(
         paint.color = Color.WHITE
 
         canvas.drawCircle(dimension / 2f, dimension / 2f, radius.toFloat(), paint)
-        canvas.drawBitmap(bitmap, 0f, 0f, paint)
 
         return bitmap
     }
 
     fun locationColor(): Int {
-        val interval = (System.currentTimeMillis() - (timestamp ?: 0)) / 1000L
-
-        return when {
-            interval <= MIN_BOUND_SECONDS -> {
-                ContextCompat.getColor(context, R.color.location_circle_fill_min)
-            }
-            interval <= MAX_BOUND_SECONDS -> {
-                ContextCompat.getColor(context, R.color.location_circle_fill_intermediate)
-            }
-            else -> {
-                ContextCompat.getColor(context, R.color.location_circle_fill_max)
-            }
+        return when (ageBucket) {
+            0 -> ContextCompat.getColor(context, R.color.location_circle_fill_min)
+            1 -> ContextCompat.getColor(context, R.color.location_circle_fill_intermediate)
+            else -> ContextCompat.getColor(context, R.color.location_circle_fill_max)
         }
     }
 
     override fun updateDiskCacheKey(messageDigest: MessageDigest) {
-        messageDigest.update(("$ID.${locationColor()}").toByteArray(Charset.forName("UTF-8")))
+        messageDigest.update(("$ID.$ageBucket").toByteArray(Charset.forName("UTF-8")))
     }
 
     override fun equals(other: Any?): Boolean {
         return if (other is LocationAgeTransformation) {
-            locationColor() == other.locationColor()
+            ageBucket == other.ageBucket
         } else false
     }
 
     override fun hashCode(): Int {
-        return locationColor().hashCode()
+        return ageBucket
     }
 
     companion object {
@@ -97,5 +99,21 @@ class LocationAgeTransformation(
 
         private const val DOT_DIMENSION = 18
         private const val DOT_RADIUS = 8
+
+        // dots only differ by bucket color, draw each once
+        private val dots = ConcurrentHashMap<Int, Bitmap>()
+
+        /**
+         * Age bucket of a location timestamp, 0 for recent, 1 for intermediate and 2 for old.
+         */
+        fun ageBucket(timestamp: Long?): Int {
+            val interval = (System.currentTimeMillis() - (timestamp ?: 0)) / 1000L
+
+            return when {
+                interval <= MIN_BOUND_SECONDS -> 0
+                interval <= MAX_BOUND_SECONDS -> 1
+                else -> 2
+            }
+        }
     }
 }
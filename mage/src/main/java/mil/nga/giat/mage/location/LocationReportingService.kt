@@ -14,13 +14,12 @@ import androidx.lifecycle.LifecycleService
 import androidx.lifecycle.Observer
 import androidx.lifecycle.lifecycleScope
 import dagger.hilt.android.AndroidEntryPoint
-import kotlinx.coroutines.channels.Channel
-import kotlinx.coroutines.flow.receiveAsFlow
 import kotlinx.coroutines.launch
 import mil.nga.giat.mage.MageApplication
 import mil.nga.giat.mage.R
 import mil.nga.giat.mage.data.repository.location.LocationRepository
 import mil.nga.giat.mage.login.LoginActivity
+import mil.nga.giat.mage.sync.SyncOrchestrator
 import javax.inject.Inject
 
 @AndroidEntryPoint
@@ -30,11 +29,9 @@ open class LocationReportingService : LifecycleService(), Observer<Location>, Sh
     @Inject lateinit var locationRepository: LocationRepository
     @Inject lateinit var locationAccess: LocationAccess
     @Inject lateinit var preferences: SharedPreferences
+    @Inject lateinit var syncOrchestrator: SyncOrchestrator
 
     private var shouldReportLocation: Boolean = false
-    private var locationPushFrequency: Long = 0
-    private var oldestLocationTime: Long = 0
-    private lateinit var locationChannel: Channel<Location>
 
     companion object {
         private val LOG_NAME = LocationReportingService::class.java.name
@@ -55,7 +52,6 @@ open class LocationReportingService : LifecycleService(), Observer<Location>, Sh
 
         preferences.registerOnSharedPreferenceChangeListener(this)
 
-        locationPushFrequency = getLocationPushFrequency()
         shouldReportLocation = getShouldReportLocation()
 
         val notificationManager = getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
@@ -76,12 +72,9 @@ open class LocationReportingService : LifecycleService(), Observer<Location>, Sh
             .addAction(R.drawable.ic_power_settings_new_white_24dp, "Logout", pendingIntent)
             .build()
 
-        locationChannel = Channel(Channel.CONFLATED)
-        lifecycleScope.launch {
-            locationChannel.receiveAsFlow().collect { location ->
-                pushLocations(location)
-            }
-        }
+        // Locations are pushed by the sync orchestrator, make sure it is running if the
+        // service was restarted without the rest of the application
+        syncOrchestrator.start()
 
         startForeground(NOTIFICATION_ID, notification)
     }
@@ -98,7 +91,6 @@ open class LocationReportingService : LifecycleService(), Observer<Location>, Sh
         super.onDestroy()
 
         locationProvider.removeObserver(this)
-        locationChannel.close()
         preferences.unregisterOnSharedPreferenceChangeListener(this)
     }
 
@@ -108,20 +100,11 @@ open class LocationReportingService : LifecycleService(), Observer<Location>, Sh
 
             lifecycleScope.launch {
                 locationRepository.saveLocation(value)
-                locationChannel.send(value)
-            }
-        }
-    }
 
-    private suspend fun pushLocations(location: Location) {
-        if (oldestLocationTime == 0L) {
-            oldestLocationTime = location.time
-        }
-
-        if (!locationAccess.isPreciseLocationGranted() || (location.time - oldestLocationTime > locationPushFrequency)) {
-            val success = locationRepository.pushLocations()
-            if (success) {
-                oldestLocationTime = 0
+                // Coarse locations are infrequent, push each one as it arrives
+                if (!locationAccess.isPreciseLocationGranted()) {
+                    syncOrchestrator.requestSync(SyncOrchestrator.SyncJob.LOCATION_PUSH)
+                }
             }
         }
     }
@@ -130,16 +113,9 @@ open class LocationReportingService : LifecycleService(), Observer<Location>, Sh
         if (key.equals(getString(R.string.reportLocationKey), ignoreCase = true)) {
             shouldReportLocation = getShouldReportLocation()
             Log.d(LOG_NAME, "Report location changed $shouldReportLocation")
-        } else if (key.equals(getString(R.string.locationPushFrequencyKey), ignoreCase = true)) {
-            locationPushFrequency = getLocationPushFrequency()
-            Log.d(LOG_NAME, "Location push frequency changed $locationPushFrequency")
         }
     }
 
-    private fun getLocationPushFrequency(): Long {
-        return preferences.getInt(getString(R.string.locationPushFrequencyKey), resources.getInteger(R.integer.locationPushFrequencyDefaultValue)).toLong()
-    }
-
     private fun getShouldReportLocation(): Boolean {
         return preferences.getBoolean(getString(R.string.reportLocationKey), resources.getBoolean(R.bool.reportLocationDefaultValue))
     }
@@ -0,0 +1,101 @@
+package mil.nga.giat.mage.location
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.withContext
+import mil.nga.giat.mage.R
+import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
+import mil.nga.giat.mage.data.datasource.location.LocationLocalDataSource
+import mil.nga.giat.mage.sdk.exceptions.LocationException
+import mil.nga.sf.util.GeometryUtils
+import java.util.Date
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Bounds the growth of the locations table. Each user's synced fixes older than the retention
+ * age are thinned by time and distance, and the event is capped to a maximum number of synced
+ * locations. Locations that were never pushed are left for the push to pick up.
+ */
+@Singleton
+class LocationRetention @Inject constructor(
+   @ApplicationContext private val context: Context,
+   private val preferences: SharedPreferences,
+   private val eventLocalDataSource: EventLocalDataSource,
+   private val locationLocalDataSource: LocationLocalDataSource
+) {
+
+   data class Policy(
+      val age: Long,
+      val minInterval: Long,
+      val tolerance: Double,
+      val maxLocations: Int
+   )
+
+   private val _reclaimed = MutableStateFlow(0)
+
+   /**
+    * Total number of location rows reclaimed since the app started.
+    */
+   val reclaimed: StateFlow<Int> = _reclaimed.asStateFlow()
+
+   val policy: Policy get() = Policy(
+      age = getInt(R.string.locationRetentionAgeKey, R.integer.locationRetentionAgeDefaultValue).toLong(),
+      minInterval = getInt(R.string.locationRetentionIntervalKey, R.integer.locationRetentionIntervalDefaultValue).toLong(),
+      tolerance = getInt(R.string.locationRetentionToleranceKey, R.integer.locationRetentionToleranceDefaultValue).toDouble(),
+      maxLocations = getInt(R.string.locationRetentionMaxKey, R.integer.locationRetentionMaxDefaultValue)
+   )
+
+   /**
+    * Apply the retention policy to the current event.
+    *
+    * @return number of location rows reclaimed
+    */
+   suspend fun prune(): Int = withContext(Dispatchers.IO) {
+      val event = eventLocalDataSource.currentEvent ?: return@withContext 0
+      val policy = policy
+      val before = Date(System.currentTimeMillis() - policy.age)
+
+      var reclaimed = 0
+      try {
+         locationLocalDataSource.getUserIds(event).forEach { userId ->
+            val track = locationLocalDataSource.getTrack(userId, event.id, before)
+            val points = track.map { location ->
+               val point = GeometryUtils.getCentroid(location.geometry)
+               TrackSimplifier.TrackPoint(location.timestamp.time, point.y, point.x)
+            }
+
+            val keep = TrackSimplifier.simplify(points, policy.minInterval, policy.tolerance)
+            val thinned = track.filterIndexed { index, _ -> !keep.contains(index) }
+            if (thinned.isNotEmpty()) {
+               reclaimed += locationLocalDataSource.delete(thinned)
+            }
+         }
+
+         reclaimed += locationLocalDataSource.trimLocations(event, policy.maxLocations)
+      } catch (e: LocationException) {
+         Log.e(LOG_NAME, "Error applying location retention", e)
+      }
+
+      if (reclaimed > 0) {
+         Log.d(LOG_NAME, "Reclaimed $reclaimed locations")
+         _reclaimed.value += reclaimed
+      }
+
+      reclaimed
+   }
+
+   private fun getInt(key: Int, defaultValue: Int): Int {
+      return preferences.getInt(context.getString(key), context.resources.getInteger(defaultValue))
+   }
+
+   companion object {
+      private val LOG_NAME = LocationRetention::class.java.name
+   }
+}
@@ -0,0 +1,85 @@
+package mil.nga.giat.mage.location
+
+import kotlin.math.cos
+import kotlin.math.hypot
+
+/**
+ * Thins a track, oldest point first, by time and then by distance.
+ */
+object TrackSimplifier {
+
+   data class TrackPoint(
+      val time: Long,
+      val latitude: Double,
+      val longitude: Double
+   )
+
+   /**
+    * @param minInterval milliseconds, points closer in time to the previously kept point are dropped
+    * @param tolerance meters, Douglas-Peucker tolerance applied to the remaining points
+    * @return indices of the points to keep, the first and last point are always kept
+    */
+   fun simplify(points: List<TrackPoint>, minInterval: Long, tolerance: Double): Set<Int> {
+      if (points.size <= 2) return points.indices.toSet()
+
+      // time thinning
+      val timed = mutableListOf(0)
+      for (i in 1 until points.size - 1) {
+         if (points[i].time - points[timed.last()].time >= minInterval) {
+            timed.add(i)
+         }
+      }
+      timed.add(points.size - 1)
+
+      // distance thinning
+      val keep = BooleanArray(timed.size)
+      keep[0] = true
+      keep[timed.size - 1] = true
+
+      val stack = ArrayDeque<Pair<Int, Int>>()
+      stack.addLast(0 to timed.size - 1)
+      while (stack.isNotEmpty()) {
+         val (start, end) = stack.removeLast()
+         var maxDistance = 0.0
+         var index = -1
+         for (i in start + 1 until end) {
+            val distance = distance(points[timed[i]], points[timed[start]], points[timed[end]])
+            if (distance > maxDistance) {
+               maxDistance = distance
+               index = i
+            }
+         }
+
+         if (index != -1 && maxDistance > tolerance) {
+            keep[index] = true
+            stack.addLast(start to index)
+            stack.addLast(index to end)
+         }
+      }
+
+      return timed.filterIndexed { i, _ -> keep[i] }.toSet()
+   }
+
+   /**
+    * Distance in meters from point to the segment start-end, using an equirectangular
+    * projection which is accurate enough at track scale.
+    */
+   private fun distance(point: TrackPoint, start: TrackPoint, end: TrackPoint): Double {
+      val scale = cos(Math.toRadians(start.latitude))
+      fun x(p: TrackPoint) = (p.longitude - start.longitude) * scale * METERS_PER_DEGREE
+      fun y(p: TrackPoint) = (p.latitude - start.latitude) * METERS_PER_DEGREE
+
+      val px = x(point)
+      val py = y(point)
+      val ex = x(end)
+      val ey = y(end)
+
+      val length = ex * ex + ey * ey
+      if (length == 0.0) return hypot(px, py)
+
+      val t = ((px * ex + py * ey) / length).coerceIn(0.0, 1.0)
+      return hypot(px - t * ex, py - t * ey)
+   }
+
+   private const val METERS_PER_DEGREE = 111_320.0
+}
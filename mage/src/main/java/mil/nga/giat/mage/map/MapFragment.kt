@@ -82,11 +82,13 @@ import mil.nga.geopackage.tiles.TileBoundingBoxUtils
 import mil.nga.geopackage.tiles.features.DefaultFeatureTiles
 import mil.nga.geopackage.tiles.features.FeatureTiles
 import mil.nga.geopackage.tiles.features.custom.NumberFeaturesTile
+import mil.nga.giat.mage.di.TileClient
 import mil.nga.giat.mage.LandingViewModel
 import mil.nga.giat.mage.LandingViewModel.NavigableType
 import mil.nga.giat.mage.R
 import mil.nga.giat.mage.coordinate.CoordinateFormatter
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource
+import mil.nga.giat.mage.data.datasource.feature.StaticFeatureGeoPackage
 import mil.nga.giat.mage.data.datasource.layer.LayerLocalDataSource
 import mil.nga.giat.mage.data.datasource.location.LocationLocalDataSource
 import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
@@ -95,6 +97,7 @@ import mil.nga.giat.mage.databinding.FragmentMapBinding
 import mil.nga.giat.mage.feed.item.FeedItemActivity
 import mil.nga.giat.mage.filter.FilterActivity
 import mil.nga.giat.mage.geopackage.media.GeoPackageMediaActivity
+import mil.nga.giat.mage.glide.MarkerIconCache
 import mil.nga.giat.mage.glide.transform.LocationAgeTransformation
 import mil.nga.giat.mage.location.LocationAccess
 import mil.nga.giat.mage.location.LocationPolicy
@@ -105,6 +108,7 @@ import mil.nga.giat.mage.map.cache.CacheOverlayFilter
 import mil.nga.giat.mage.map.cache.CacheOverlayType
 import mil.nga.giat.mage.map.cache.CacheProvider
 import mil.nga.giat.mage.map.cache.CacheProvider.OnCacheOverlayListener
+import mil.nga.giat.mage.map.cache.CachingTileProvider
 import mil.nga.giat.mage.map.cache.GeoPackageCacheOverlay
 import mil.nga.giat.mage.map.cache.GeoPackageFeatureTableCacheOverlay
 import mil.nga.giat.mage.map.cache.GeoPackageTileTableCacheOverlay
@@ -125,7 +129,6 @@ import mil.nga.giat.mage.map.detail.UserPhoneAction
 import mil.nga.giat.mage.map.detail.UserPhoneDetails
 import mil.nga.giat.mage.map.feature.FeatureCollection
 import mil.nga.giat.mage.map.feature.FeedCollection
-import mil.nga.giat.mage.map.feature.StaticFeatureCollection
 import mil.nga.giat.mage.map.navigation.bearing.StraightLineNavigation
 import mil.nga.giat.mage.map.preference.MapPreferencesActivity
 import mil.nga.giat.mage.observation.ObservationLocation
@@ -148,6 +151,7 @@ import mil.nga.proj.ProjectionFactory
 import mil.nga.sf.Geometry
 import mil.nga.sf.GeometryType
 import mil.nga.sf.Point
+import okhttp3.OkHttpClient
 import java.util.Date
 import javax.inject.Inject
 import kotlin.collections.set
@@ -175,7 +179,9 @@ class MapFragment : Fragment(),
    @Inject lateinit var layerLocalDataSource: LayerLocalDataSource
    @Inject lateinit var eventLocalDataSource: EventLocalDataSource
    @Inject lateinit var locationLocalDataSource: LocationLocalDataSource
+   @Inject @TileClient lateinit var tileClient: OkHttpClient
    @Inject lateinit var cacheProvider: CacheProvider
+   @Inject lateinit var markerIconCache: MarkerIconCache
 
    private lateinit var binding: FragmentMapBinding
 
@@ -195,7 +201,7 @@ class MapFragment : Fragment(),
    private var observations: FeatureCollection<Long>? = null
    private var locations: FeatureCollection<Long>? = null
    private var feeds: FeedCollection? = null
-   private var staticFeatureCollection: StaticFeatureCollection? = null
+   private val staticFeatureOverlays: MutableMap<Long, GeoPackageFeatureTableCacheOverlay> = HashMap()
    private var searchMarker: Marker? = null
    private var selectedMarker: Marker? = null
    private var feedLiveData: Map<String, LiveData<FeedState>> = emptyMap()
@@ -203,6 +209,7 @@ class MapFragment : Fragment(),
 
    private var cacheBoundingBox: BoundingBox? = null
    private lateinit var geoPackageCache: GeoPackageCache
+   private lateinit var staticFeatureGeoPackageCache: GeoPackageCache
 
    private var gridTileOverlay: TileOverlay? = null
 
@@ -332,6 +339,7 @@ class MapFragment : Fragment(),
 
       locationProvider = locationPolicy.bestLocationProvider
       geoPackageCache = GeoPackageCache(GeoPackageFactory.getManager(application))
+      staticFeatureGeoPackageCache = GeoPackageCache(GeoPackageFactory.getManager(application))
 
       mgrsTileProvider = MGRSTileProvider(application)
       garsTileProvider = GARSTileProvider(application)
@@ -356,12 +364,11 @@ class MapFragment : Fragment(),
             if (!isRestore) {
                googleMap.uiSettings.isMyLocationButtonEnabled = false
 
-               feeds = FeedCollection(application, googleMap, 32)
-               observations = FeatureCollection(application, googleMap, 32)
-               locations = FeatureCollection(application, googleMap, 42) {
+               feeds = FeedCollection(application, googleMap, markerIconCache, 32)
+               observations = FeatureCollection(application, googleMap, markerIconCache, 32)
+               locations = FeatureCollection(application, googleMap, markerIconCache, 42) {
                   mutableListOf(LocationAgeTransformation(application, it.timestamp))
                }
-               staticFeatureCollection = StaticFeatureCollection(application, googleMap)
 
                val sensorManager = requireActivity().getSystemService(Context.SENSOR_SERVICE) as? SensorManager
                straightLineNavigation = StraightLineNavigation(
@@ -693,7 +700,7 @@ class MapFragment : Fragment(),
       geoPackageCache.closeAll()
       cacheOverlays.clear()
 
-      staticFeatureCollection?.clear()
+      removeStaticLayers()
 
       currentUser = null
       map = null
@@ -745,6 +752,10 @@ class MapFragment : Fragment(),
       observations?.setVisibility(preferences.getBoolean(resources.getString(R.string.showObservationsKey), true))
       locations?.setVisibility(preferences.getBoolean(resources.getString(R.string.showLocationsKey), true))
 
+      observations?.setClustering(preferences.getBoolean(resources.getString(R.string.clusterObservationsKey), resources.getBoolean(R.bool.clusterObservationsDefaultValue)))
+      locations?.setClustering(preferences.getBoolean(resources.getString(R.string.clusterLocationsKey), resources.getBoolean(R.bool.clusterLocationsDefaultValue)))
+      feeds?.setClustering(preferences.getBoolean(resources.getString(R.string.clusterFeedItemsKey), resources.getBoolean(R.bool.clusterFeedItemsDefaultValue)))
+
       // maybe need to turn off heading
       if (!preferences.getBoolean( resources.getString(R.string.showHeadingKey), false)) {
          straightLineNavigation?.stopHeading()
@@ -1051,7 +1062,7 @@ class MapFragment : Fragment(),
       observations?.clear()
       locations?.clear()
       feeds?.clear()
-      staticFeatureCollection?.clear()
+      removeStaticLayers()
 
       feedLiveData.values.forEach {
          it.removeObservers(viewLifecycleOwner)
@@ -1106,11 +1117,10 @@ class MapFragment : Fragment(),
          val locations = locationLocalDataSource.getCurrentUserLocations(user, 1, true)
          val userLocation = locations.firstOrNull()
          if (userLocation != null) {
-            val propertiesMap = userLocation.propertiesMap
-            val provider = propertiesMap["provider"]?.value?.toString() ?: ObservationLocation.MANUAL_PROVIDER
+            val provider = userLocation.provider ?: ObservationLocation.MANUAL_PROVIDER
             location = ObservationLocation(provider, userLocation.geometry)
             location.time = userLocation.timestamp.time
-            location.accuracy = propertiesMap["accuracy"]?.value?.toString()?.toFloatOrNull()
+            location.accuracy = userLocation.accuracy
          }
       } else {
          location = ObservationLocation(locationProvider?.value)
@@ -1186,8 +1196,8 @@ class MapFragment : Fragment(),
       featureBottomSheetBehavior.state = BottomSheetBehavior.STATE_COLLAPSED
    }
 
-   private fun showStaticFeatureBottomSheet(annotation: MapAnnotation<Long>) {
-      viewModel.selectStaticFeature(StaticFeatureId(annotation.layer.toLong(), annotation.id))
+   private fun showStaticFeatureBottomSheet(id: StaticFeatureId) {
+      viewModel.selectStaticFeature(id)
       searchBottomSheetBehavior.state = BottomSheetBehavior.STATE_HIDDEN
       featureBottomSheetBehavior.state = BottomSheetBehavior.STATE_COLLAPSED
    }
@@ -1211,6 +1221,14 @@ class MapFragment : Fragment(),
          return
       }
 
+      if (observations?.onClusterClick(marker) == true ||
+         locations?.onClusterClick(marker) == true ||
+         feeds?.onClusterClick(marker) == true
+      ) {
+         featureBottomSheetBehavior.state = BottomSheetBehavior.STATE_HIDDEN
+         return
+      }
+
       observations?.mapAnnotation(marker, "observation")?.let { annotation ->
          selectedMarker = marker
          showObservationBottomSheet(annotation)
@@ -1223,12 +1241,6 @@ class MapFragment : Fragment(),
          return
       }
 
-      staticFeatureCollection?.onMarkerClick(marker)?.let { annotation ->
-         selectedMarker = marker
-         showStaticFeatureBottomSheet(annotation)
-         return
-      }
-
       feeds?.onMarkerClick(marker)?.let { annotation ->
          selectedMarker = marker
          showFeedItemBottomSheet(annotation)
@@ -1247,9 +1259,26 @@ class MapFragment : Fragment(),
          return
       }
 
-      staticFeatureCollection?.onMapClick(latLng)?.let {
-         showStaticFeatureBottomSheet(it)
-         return
+      map?.let { googleMap ->
+         staticFeatureOverlays.forEach { (layerId, overlay) ->
+            val row = overlay.queryFeaturesNearClick(latLng, binding.mapView, googleMap)?.let { results ->
+               try {
+                  results.firstOrNull()
+               } finally {
+                  results.close()
+               }
+            }
+
+            row?.let { StaticFeatureGeoPackage.staticFeatureId(it) }?.let { featureId ->
+               row.geometry?.geometry?.let { geometry ->
+                  if (geometry !is Point) {
+                     googleMap.center(geometry)
+                  }
+               }
+               showStaticFeatureBottomSheet(StaticFeatureId(layerId, featureId))
+               return
+            }
+         }
       }
 
       val features = cacheOverlays.values.flatMap { overlay ->
@@ -1273,7 +1302,6 @@ class MapFragment : Fragment(),
       locations?.offMarkerClick()
       observations?.offMarkerClick()
       feeds?.offMarkerClick()
-      staticFeatureCollection?.offMarkerClick()
    }
 
    private fun onMapLongClick(point: LatLng) {
@@ -1327,6 +1355,12 @@ class MapFragment : Fragment(),
 
    private fun onCameraIdle() {
       setCenterCoordinateText()
+
+      observations?.onCameraIdle()
+      locations?.onCameraIdle()
+      feeds?.onCameraIdle()
+
+      map?.let { viewModel.setBounds(it.projection.visibleRegion.latLngBounds) }
    }
 
    private fun onCameraMoveStarted(reason: Int) {
@@ -1342,13 +1376,32 @@ class MapFragment : Fragment(),
       binding.centerCoordinateText.text = coordinate
    }
 
-   private fun onStaticLayers(layers: Map<Long, List<MapAnnotation<Long>>>) {
-      staticFeatureCollection?.clear()
-      layers.forEach { (id, annotations) ->
-         staticFeatureCollection?.add(id.toString(), annotations)
+   private fun onStaticLayers(layers: Map<Long, GeoPackageCacheOverlay>) {
+      removeStaticLayers()
+
+      // static layers are drawn and queried the same way as GeoPackage feature tables
+      val enabledCacheOverlays: MutableMap<String, CacheOverlay?> = HashMap()
+      layers.forEach { (layerId, geoPackageCacheOverlay) ->
+         try {
+            val geoPackage = staticFeatureGeoPackageCache.getOrOpen(geoPackageCacheOverlay.name)
+            geoPackageCacheOverlay.children
+               .filterIsInstance<GeoPackageFeatureTableCacheOverlay>()
+               .forEach { tableCacheOverlay ->
+                  addGeoPackageFeatureCacheOverlay(enabledCacheOverlays, tableCacheOverlay, geoPackage, cacheTiles = true)
+                  staticFeatureOverlays[layerId] = tableCacheOverlay
+               }
+         } catch (e: Exception) {
+            Log.e(LOG_NAME, "Failed to add static feature layer: $layerId", e)
+         }
       }
    }
 
+   private fun removeStaticLayers() {
+      staticFeatureOverlays.values.forEach { it.removeFromMap() }
+      staticFeatureOverlays.clear()
+      staticFeatureGeoPackageCache.closeAll()
+   }
+
    override fun onCacheOverlay(cacheOverlays: List<CacheOverlay>) {
       // Add all overlays that are in the preferences
       val currentEvent = eventLocalDataSource.currentEvent
@@ -1415,14 +1468,14 @@ class MapFragment : Fragment(),
          var isTransparent = false
          val tileProvider = when {
             urlCacheOverlay.format.equals("xyz", ignoreCase = true) -> {
-               XYZTileProvider(256, 256, urlCacheOverlay)
+               XYZTileProvider(256, 256, urlCacheOverlay, tileClient)
             }
             urlCacheOverlay.format.equals("tms", ignoreCase = true) -> {
-               TMSTileProvider(256, 256, urlCacheOverlay)
+               TMSTileProvider(256, 256, urlCacheOverlay, tileClient)
             }
             urlCacheOverlay is WMSCacheOverlay -> {
                isTransparent = urlCacheOverlay.wmsTransparent.toBoolean()
-               WMSTileProvider(256, 256, urlCacheOverlay)
+               WMSTileProvider(256, 256, urlCacheOverlay, tileClient)
             }
             else -> null
          }
@@ -1591,11 +1644,13 @@ class MapFragment : Fragment(),
     * @param enabledCacheOverlays
     * @param featureTableCacheOverlay
     * @param geoPackage
+    * @param cacheTiles keep recently drawn tiles in memory
     */
    private fun addGeoPackageFeatureCacheOverlay(
       enabledCacheOverlays: MutableMap<String, CacheOverlay?>,
       featureTableCacheOverlay: GeoPackageFeatureTableCacheOverlay,
-      geoPackage: GeoPackage
+      geoPackage: GeoPackage,
+      cacheTiles: Boolean = false
    ) {
       // Retrieve the cache overlay if it already exists (and remove from cache overlays)
       var cacheOverlay = cacheOverlays.remove(featureTableCacheOverlay.cacheName)
@@ -1639,7 +1694,7 @@ class MapFragment : Fragment(),
             val overlay = GeoPackageOverlayFactory.getLinkedFeatureOverlay(featureOverlay, geoPackage)
             val featureOverlayQuery = FeatureOverlayQuery(activity, overlay, featureTiles)
             featureTableCacheOverlay.featureOverlayQuery = featureOverlayQuery
-            val overlayOptions = createFeatureTileOverlayOptions(overlay)
+            val overlayOptions = createFeatureTileOverlayOptions(if (cacheTiles) CachingTileProvider(overlay) else overlay)
             val tileOverlay = map?.addTileOverlay(overlayOptions)
             featureTableCacheOverlay.tileOverlay = tileOverlay
          } else {
@@ -1754,6 +1809,6 @@ class MapFragment : Fragment(),
    companion object {
       private val LOG_NAME = MapFragment::class.java.name
       private const val MAP_VIEW_STATE = "MAP_VIEW_STATE"
-      private const val MARKER_REFRESH_INTERVAL: Int = 300 * 1000
+      private const val MARKER_REFRESH_INTERVAL: Int = 60 * 1000
    }
 }
\ No newline at end of file
@@ -3,20 +3,29 @@ package mil.nga.giat.mage.map
 import android.app.Application
 import androidx.lifecycle.*
 import dagger.hilt.android.lifecycle.HiltViewModel
+import com.google.android.gms.maps.model.LatLngBounds
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.flatMapLatest
 import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.flow.map
-import kotlinx.coroutines.flow.transform
 import kotlinx.coroutines.launch
 import mil.nga.giat.mage.database.model.feed.Feed
+import mil.nga.giat.mage.database.dao.feed.FeedDao
 import mil.nga.giat.mage.database.dao.feed.FeedItemDao
-import mil.nga.giat.mage.database.model.feed.FeedWithItems
+import mil.nga.giat.mage.database.model.feed.FeedItem
 import mil.nga.giat.mage.database.model.feed.ItemWithFeed
 import mil.nga.giat.mage.data.repository.layer.LayerRepository
 import mil.nga.giat.mage.data.repository.location.LocationRepository
 import mil.nga.giat.mage.data.repository.observation.ObservationRepository
 import mil.nga.giat.mage.glide.model.Avatar
 import mil.nga.giat.mage.map.annotation.MapAnnotation
+import mil.nga.giat.mage.map.cache.CacheProvider
 import mil.nga.giat.mage.map.preference.MapLayerPreferences
 import mil.nga.giat.mage.network.Server
 import mil.nga.giat.mage.network.gson.asStringOrNull
@@ -35,6 +44,8 @@ import mil.nga.giat.mage.sdk.exceptions.ObservationException
 import mil.nga.giat.mage.sdk.exceptions.UserException
 import mil.nga.giat.mage.sdk.utils.ISO8601DateFormatFactory
 import mil.nga.giat.mage.utils.DateFormatFactory
+import mil.nga.sf.GeometryEnvelope
+import mil.nga.sf.util.GeometryEnvelopeBuilder
 import java.text.DateFormat
 import java.util.*
 import javax.inject.Inject
@@ -47,8 +58,10 @@ data class StaticFeatureId(val layerId: Long, val featureId: Long)
 class MapViewModel @Inject constructor(
     private val application: Application,
     private val mapLayerPreferences: MapLayerPreferences,
+    private val feedDao: FeedDao,
     private val feedItemDao: FeedItemDao,
     private val layerRepository: LayerRepository,
+    private val cacheProvider: CacheProvider,
     private val userLocalDataSource: UserLocalDataSource,
     private val eventLocalDataSource: EventLocalDataSource,
     private val observationLocalDataSource: ObservationLocalDataSource,
@@ -66,9 +79,29 @@ class MapViewModel @Inject constructor(
         mapSettings.searchType != MapSearchType.NONE
     }.asLiveData()
 
-    val observations = observationRepository.getObservations().transform { observations ->
-        val states = eventLocalDataSource.currentEvent?.let { event ->
-            observations.map { observation ->
+    private val bounds = MutableStateFlow<LatLngBounds?>(null)
+
+    /**
+     * Set the visible region of the map, annotations are only emitted within these bounds.
+     */
+    fun setBounds(bounds: LatLngBounds) {
+        this.bounds.value = bounds
+    }
+
+    @OptIn(FlowPreview::class)
+    private val visibleEnvelope = bounds
+        .filterNotNull()
+        .debounce(BOUNDS_DEBOUNCE_MILLIS)
+        .map { queryEnvelope(it) }
+
+    val observations = combine(
+        observationRepository.getObservations().map { observations ->
+            SpatialIndex(observations) { GeometryEnvelopeBuilder.buildEnvelope(it.geometry) }
+        },
+        visibleEnvelope
+    ) { index, envelope ->
+        eventLocalDataSource.currentEvent?.let { event ->
+            index.query(envelope).map { observation ->
                 val observationForm = observation.forms.firstOrNull()
                 val formDefinition = observationForm?.formId?.let { formId ->
                     eventLocalDataSource.getForm(formId)
@@ -84,31 +117,27 @@ class MapViewModel @Inject constructor(
                 )
             }
         } ?: emptyList()
-
-        emit(states)
-
     }.flowOn(Dispatchers.IO).asLiveData()
 
-    val locations = locationRepository.getLocations().transform { locations ->
-        val states = locations.map { location ->
+    val locations = combine(
+        locationRepository.getLocations().map { locations ->
+            SpatialIndex(locations) { GeometryEnvelopeBuilder.buildEnvelope(it.geometry) }
+        },
+        visibleEnvelope
+    ) { index, envelope ->
+        index.query(envelope).map { location ->
             MapAnnotation.fromUser(location.user, location)
         }
-
-        emit(states)
     }.flowOn(Dispatchers.IO).asLiveData()
 
     val featureLayers = eventId.switchMap { eventId ->
         liveData(context = viewModelScope.coroutineContext + Dispatchers.IO) {
-            val layers = layerRepository.getStaticFeatureLayers(eventId)
-            val annotations = layers.associateBy({ it.id }, { layer ->
-                val features = layerRepository.getStaticFeatures(layer.id)
-                val annotations = features.map { feature ->
-                    MapAnnotation.fromStaticFeature(feature, application)
-                }
-                annotations
-            })
+            val geoPackages = layerRepository.getStaticFeatureGeoPackages(eventId)
+            val overlays = geoPackages.mapNotNull { (layerId, database) ->
+                cacheProvider.getGeoPackageCacheOverlay(database)?.let { layerId to it }
+            }.toMap()
 
-            emit(annotations)
+            emit(overlays)
         }
     }
 
@@ -127,9 +156,7 @@ class MapViewModel @Inject constructor(
             feedIds.forEach { feedId ->
                 var liveData = _feeds.value?.get(feedId)
                 if (liveData == null) {
-                    liveData = feedItemDao.feedWithItems(feedId).map {
-                        toFeedItemState(it)
-                    }
+                    liveData = feedItems(feedId)
                 }
 
                 items[feedId] = liveData
@@ -140,11 +167,48 @@ class MapViewModel @Inject constructor(
         }
 
     data class FeedState(val feed: Feed, val items: List<MapAnnotation<String>>)
-    private fun toFeedItemState(feedWithItems: FeedWithItems): FeedState {
-        val mapFeatures = feedWithItems.items.mapNotNull {
-            MapAnnotation.fromFeedItem(ItemWithFeed(feedWithItems.feed, it), application)
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private fun feedItems(feedId: String): LiveData<FeedState> {
+        return visibleEnvelope
+            .flatMapLatest { envelope ->
+                combine(
+                    feedDao.observeFeed(feedId).filterNotNull(),
+                    feedItemDao.itemsInBounds(feedId, envelope.minX, envelope.minY, envelope.maxX, envelope.maxY, MAX_FEED_ITEMS)
+                ) { feed, items ->
+                    toFeedItemState(feed, items)
+                }
+            }
+            .flowOn(Dispatchers.IO)
+            .asLiveData()
+    }
+
+    private fun queryEnvelope(bounds: LatLngBounds): GeometryEnvelope {
+        val southwest = bounds.southwest
+        val northeast = bounds.northeast
+
+        // pad the region so small pans do not drop items at the edge of the screen
+        val latitudePadding = (northeast.latitude - southwest.latitude) * BOUNDS_PADDING
+        val longitudeRange = if (southwest.longitude <= northeast.longitude) {
+            val longitudePadding = (northeast.longitude - southwest.longitude) * BOUNDS_PADDING
+            (southwest.longitude - longitudePadding) to (northeast.longitude + longitudePadding)
+        } else {
+            // region crosses the antimeridian
+            -180.0 to 180.0
         }
-        return FeedState(feedWithItems.feed, mapFeatures)
+
+        return GeometryEnvelope(
+            longitudeRange.first,
+            southwest.latitude - latitudePadding,
+            longitudeRange.second,
+            northeast.latitude + latitudePadding
+        )
+    }
+
+    private fun toFeedItemState(feed: Feed, items: List<FeedItem>): FeedState {
+        val mapFeatures = items.mapNotNull {
+            MapAnnotation.fromFeedItem(ItemWithFeed(feed, it), application)
+        }
+        return FeedState(feed, mapFeatures)
     }
 
     private val observationId = MutableLiveData<Long?>()
@@ -364,4 +428,10 @@ class MapViewModel @Inject constructor(
         _geoPackageFeature.value = null
         _staticFeatureId.value = null
     }
+
+    companion object {
+        private const val BOUNDS_DEBOUNCE_MILLIS = 250L
+        private const val BOUNDS_PADDING = 0.25
+        private const val MAX_FEED_ITEMS = 1000
+    }
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package mil.nga.giat.mage.map
+
+import android.util.Log
+import com.google.android.gms.maps.model.Tile
+import com.google.android.gms.maps.model.TileProvider
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import java.io.IOException
+import java.net.URL
+
+/**
+ * Url tile provider that loads tiles through the shared OkHttp client so tiles are served
+ * from, and revalidated against, the HTTP disk cache.
+ */
+abstract class OkHttpTileProvider(
+   private val width: Int,
+   private val height: Int,
+   private val client: OkHttpClient
+) : TileProvider {
+
+   abstract fun getTileUrl(x: Int, y: Int, z: Int): URL?
+
+   override fun getTile(x: Int, y: Int, z: Int): Tile? {
+      val url = getTileUrl(x, y, z) ?: return TileProvider.NO_TILE
+
+      return try {
+         client.newCall(Request.Builder().url(url).build()).execute().use { response ->
+            val bytes = response.body?.bytes()
+            if (response.isSuccessful && bytes != null) {
+               Tile(width, height, bytes)
+            } else {
+               TileProvider.NO_TILE
+            }
+         }
+      } catch (e: IOException) {
+         Log.w(LOG_NAME, "Problem fetching tile $url", e)
+         null
+      }
+   }
+
+   companion object {
+      private val LOG_NAME = OkHttpTileProvider::class.java.name
+   }
+}
@@ -0,0 +1,94 @@
+package mil.nga.giat.mage.map
+
+import mil.nga.sf.GeometryEnvelope
+import kotlin.math.ceil
+import kotlin.math.sqrt
+
+/**
+ * Read only R-tree of items by envelope, bulk loaded with sort-tile-recursive packing.
+ * Items without an envelope are not indexed.
+ */
+class SpatialIndex<T>(
+   items: Collection<T>,
+   envelope: (T) -> GeometryEnvelope?
+) {
+   private class Node<T>(
+      val minX: Double,
+      val minY: Double,
+      val maxX: Double,
+      val maxY: Double,
+      val item: T? = null,
+      val children: List<Node<T>> = emptyList()
+   ) {
+      val centerX get() = (minX + maxX) / 2
+      val centerY get() = (minY + maxY) / 2
+
+      fun intersects(envelope: GeometryEnvelope): Boolean {
+         return minX <= envelope.maxX && maxX >= envelope.minX && minY <= envelope.maxY && maxY >= envelope.minY
+      }
+   }
+
+   private val root: Node<T>?
+
+   val size: Int
+
+   init {
+      var nodes = items.mapNotNull { item ->
+         envelope(item)?.let { Node(it.minX, it.minY, it.maxX, it.maxY, item = item) }
+      }
+      size = nodes.size
+
+      while (nodes.size > NODE_CAPACITY) {
+         nodes = pack(nodes)
+      }
+      root = if (nodes.isEmpty()) null else parent(nodes)
+   }
+
+   /**
+    * Items with an envelope that intersects the query envelope.
+    */
+   fun query(envelope: GeometryEnvelope): List<T> {
+      val results = mutableListOf<T>()
+      val stack = ArrayDeque<Node<T>>()
+      root?.let { stack.add(it) }
+
+      while (stack.isNotEmpty()) {
+         val node = stack.removeLast()
+         if (!node.intersects(envelope)) continue
+
+         if (node.item != null) {
+            results.add(node.item)
+         } else {
+            stack.addAll(node.children)
+         }
+      }
+
+      return results
+   }
+
+   private fun pack(nodes: List<Node<T>>): List<Node<T>> {
+      val parentCount = ceil(nodes.size / NODE_CAPACITY.toDouble())
+      val sliceSize = ceil(sqrt(parentCount)).toInt() * NODE_CAPACITY
+
+      return nodes
+         .sortedBy { it.centerX }
+         .chunked(sliceSize)
+         .flatMap { slice ->
+            slice.sortedBy { it.centerY }.chunked(NODE_CAPACITY).map { parent(it) }
+         }
+   }
+
+   private fun parent(children: List<Node<T>>): Node<T> {
+      return Node(
+         minX = children.minOf { it.minX },
+         minY = children.minOf { it.minY },
+         maxX = children.maxOf { it.maxX },
+         maxY = children.maxOf { it.maxY },
+         children = children
+      )
+   }
+
+   companion object {
+      private const val NODE_CAPACITY = 16
+   }
+}
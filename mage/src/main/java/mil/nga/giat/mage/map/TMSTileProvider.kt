@@ -1,8 +1,8 @@
 package mil.nga.giat.mage.map
 
 import android.util.Log
-import com.google.android.gms.maps.model.UrlTileProvider
 import mil.nga.giat.mage.map.cache.URLCacheOverlay
+import okhttp3.OkHttpClient
 import java.net.MalformedURLException
 import java.net.URL
 import kotlin.math.pow
@@ -10,8 +10,9 @@ import kotlin.math.pow
 class TMSTileProvider(
    width: Int,
    height: Int,
-   private val myOverlay: URLCacheOverlay
-) : UrlTileProvider(width, height) {
+   private val myOverlay: URLCacheOverlay,
+   client: OkHttpClient
+) : OkHttpTileProvider(width, height, client) {
 
    override fun getTileUrl(x: Int, y: Int, z: Int): URL? {
       val yTranslation = 2.0.pow(z.toDouble()).toLong() - y - 1
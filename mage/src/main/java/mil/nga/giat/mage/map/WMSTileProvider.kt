@@ -1,9 +1,9 @@
 package mil.nga.giat.mage.map
 
 import android.util.Log
-import com.google.android.gms.maps.model.UrlTileProvider
 import mil.nga.giat.mage.map.cache.URLCacheOverlay
 import mil.nga.giat.mage.map.cache.WMSCacheOverlay
+import okhttp3.OkHttpClient
 import java.net.MalformedURLException
 import java.net.URL
 import kotlin.math.*
@@ -11,8 +11,9 @@ import kotlin.math.*
 class WMSTileProvider(
    private val myWidth: Int,
    private val myHeight: Int,
-   overlay: URLCacheOverlay
-) : UrlTileProvider(myWidth, myHeight) {
+   overlay: URLCacheOverlay,
+   client: OkHttpClient
+) : OkHttpTileProvider(myWidth, myHeight, client) {
 
    val overlay: WMSCacheOverlay = overlay as WMSCacheOverlay
 
@@ -9,6 +9,7 @@ import mil.nga.giat.mage.database.model.observation.ObservationForm
 import java.io.File
 import java.io.FileFilter
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 open class IconStyle(
    val uri: Uri? = null
@@ -48,6 +49,28 @@ open class IconStyle(
 
 class ObservationIconStyle: IconStyle() {
    companion object {
+      private data class IconKey(val eventId: String, val properties: List<String>)
+      private class IconEntry(val file: File?)
+
+      // resolving an icon walks the icon directories, remember the result per event and property values
+      private val iconIndex = ConcurrentHashMap<IconKey, IconEntry>()
+
+      /**
+       * Forget resolved icons for the given forms of an event, or for the whole event when
+       * formIds is null.
+       */
+      fun invalidate(eventId: String, formIds: Set<Long>? = null) {
+         val forms = formIds?.map { it.toString() }?.toSet()
+         iconIndex.keys.removeAll { key ->
+            key.eventId == eventId && (forms == null || key.properties.lastOrNull() in forms)
+         }
+      }
+
+      private fun resolveIcon(eventId: String, iconProperties: Stack<String>, path: File): File? {
+         val key = IconKey(eventId, iconProperties.toList())
+         return iconIndex.getOrPut(key) { IconEntry(recurseIconPath(iconProperties, path, 0)) }.file
+      }
+
       fun fromObservation(
          event: Event?,
          formDefinition: Form?,
@@ -100,7 +123,7 @@ class ObservationIconStyle: IconStyle() {
 
          observationForm?.formId?.let { iconProperties.add(it.toString()) }
 
-         return recurseIconPath(iconProperties, path, 0)
+         return resolveIcon(event.remoteId, iconProperties, path)
       }
 
       private fun observationIcon(eventId: String, formId: Long?, primary: String?, secondary: String?, context: Context): File? {
@@ -119,7 +142,7 @@ class ObservationIconStyle: IconStyle() {
             iconProperties.add(formId.toString())
          }
 
-         return recurseIconPath(iconProperties, path, 0)
+         return resolveIcon(eventId, iconProperties, path)
       }
    }
 }
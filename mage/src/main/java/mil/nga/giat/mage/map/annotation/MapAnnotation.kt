@@ -80,7 +80,7 @@ data class MapAnnotation<T>(
          } else null
 
          val iconUri = iconPath?.let { Uri.fromFile(it) }
-         val accuracy = location.propertiesMap["accuracy"]?.value?.toString()?.toFloatOrNull()
+         val accuracy = location.accuracy
 
          return MapAnnotation(
             id = location.id,
@@ -300,6 +300,16 @@ class CacheProvider @Inject constructor(
       return cacheOverlay
    }
 
+   /**
+    * Get an internal GeoPackage database as a cache overlay
+    *
+    * @param database
+    * @return cache overlay
+    */
+   fun getGeoPackageCacheOverlay(database: String): GeoPackageCacheOverlay? {
+      return getGeoPackageCacheOverlay(GeoPackageFactory.getManager(application), database)
+   }
+
    /**
     * Get the GeoPackage database as a cache overlay
     *
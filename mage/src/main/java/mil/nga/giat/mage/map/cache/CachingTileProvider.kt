@@ -0,0 +1,36 @@
+package mil.nga.giat.mage.map.cache
+
+import android.util.LruCache
+import com.google.android.gms.maps.model.Tile
+import com.google.android.gms.maps.model.TileProvider
+
+/**
+ * Keeps the most recently drawn tiles of a tile provider in memory, so panning back over an area
+ * or zooming back out does not draw the same tiles again. Tiles the delegate could not provide yet
+ * (null) are not cached.
+ *
+ * @param maxSize maximum size of the cached tile images in bytes
+ */
+class CachingTileProvider(
+   private val delegate: TileProvider,
+   maxSize: Int = DEFAULT_MAX_SIZE_BYTES
+) : TileProvider {
+
+   private data class Key(val x: Int, val y: Int, val zoom: Int)
+
+   private val tiles = object : LruCache<Key, Tile>(maxSize) {
+      // empty tiles still take an entry, count them so they are bounded too
+      override fun sizeOf(key: Key, value: Tile) = value.data?.size?.coerceAtLeast(1) ?: 1
+   }
+
+   override fun getTile(x: Int, y: Int, zoom: Int): Tile? {
+      val key = Key(x, y, zoom)
+      tiles.get(key)?.let { return it }
+
+      return delegate.getTile(x, y, zoom)?.also { tiles.put(key, it) }
+   }
+
+   companion object {
+      private const val DEFAULT_MAX_SIZE_BYTES = 4 * 1024 * 1024
+   }
+}
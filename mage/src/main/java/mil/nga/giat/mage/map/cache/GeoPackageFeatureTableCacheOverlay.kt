@@ -13,6 +13,7 @@ import mil.nga.geopackage.extension.related.ExtendedRelation
 import mil.nga.geopackage.extension.related.RelatedTablesExtension
 import mil.nga.geopackage.extension.related.RelationType
 import mil.nga.geopackage.extension.schema.columns.DataColumnsDao
+import mil.nga.geopackage.features.index.FeatureIndexResults
 import mil.nga.geopackage.geom.GeoPackageGeometryData
 import mil.nga.geopackage.map.MapUtils
 import mil.nga.geopackage.map.geom.GoogleMapShape
@@ -167,6 +168,27 @@ class GeoPackageFeatureTableCacheOverlay(
    val linkedTileTables: List<GeoPackageTileTableCacheOverlay>
       get() = linkedTiles
 
+   /**
+    * Query the feature rows near the click location
+    *
+    * @return feature index results, null when the features are not drawn at the current zoom
+    */
+   fun queryFeaturesNearClick(latLng: LatLng, mapView: MapView, map: GoogleMap): FeatureIndexResults? {
+      val zoom = MapUtils.getCurrentZoom(map).toDouble()
+      if (!isIndexed || !featureOverlayQuery.isOnAtCurrentZoom(zoom, latLng)) {
+         return null
+      }
+
+      val boundingBox = MapUtils.buildClickBoundingBox(
+         latLng,
+         mapView,
+         map,
+         featureOverlayQuery.screenClickPercentage
+      )
+
+      return featureOverlayQuery.queryFeatures(boundingBox)
+   }
+
    override fun getFeaturesNearClick(
       latLng: LatLng,
       mapView: MapView,
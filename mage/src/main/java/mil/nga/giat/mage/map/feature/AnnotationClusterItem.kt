@@ -0,0 +1,23 @@
+package mil.nga.giat.mage.map.feature
+
+import com.google.android.gms.maps.model.LatLng
+import com.google.maps.android.clustering.ClusterItem
+import mil.nga.giat.mage.map.annotation.MapAnnotation
+import mil.nga.sf.util.GeometryUtils
+
+class AnnotationClusterItem<T>(
+   val annotation: MapAnnotation<T>
+) : ClusterItem {
+   private val position = GeometryUtils.getCentroid(annotation.geometry).let { LatLng(it.y, it.x) }
+
+   override fun getPosition(): LatLng = position
+   override fun getTitle(): String? = null
+   override fun getSnippet(): String? = null
+   override fun getZIndex(): Float? = null
+
+   override fun equals(other: Any?): Boolean {
+      return other is AnnotationClusterItem<*> && other.annotation.id == annotation.id
+   }
+
+   override fun hashCode(): Int = annotation.id.hashCode()
+}
@@ -3,8 +3,13 @@ package mil.nga.giat.mage.map.feature
 import android.animation.ValueAnimator
 import android.content.Context
 import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.Typeface
 import android.util.Log
 import android.util.Pair
+import android.view.animation.DecelerateInterpolator
 import androidx.core.content.ContextCompat
 import com.bumptech.glide.Glide
 import com.bumptech.glide.load.DataSource
@@ -12,139 +17,180 @@ import com.bumptech.glide.load.Transformation
 import com.bumptech.glide.load.engine.GlideException
 import com.bumptech.glide.request.RequestListener
 import com.bumptech.glide.request.target.Target
+import com.google.android.gms.maps.CameraUpdateFactory
 import com.google.android.gms.maps.GoogleMap
 import com.google.android.gms.maps.model.*
 import com.google.maps.android.PolyUtil
+import com.google.maps.android.clustering.Cluster
+import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm
 import mil.nga.geopackage.map.geom.GoogleMapShapeConverter
 import mil.nga.giat.mage.R
+import mil.nga.giat.mage.glide.MarkerIconCache
 import mil.nga.giat.mage.glide.target.MarkerTarget
+import mil.nga.giat.mage.map.annotation.IconStyle
 import mil.nga.giat.mage.map.annotation.MapAnnotation
 import mil.nga.giat.mage.map.annotation.ShapeStyle
 import mil.nga.giat.mage.map.center
 import mil.nga.giat.mage.map.lineTolerance
 import mil.nga.sf.GeometryType
 import mil.nga.sf.util.GeometryUtils
+import java.util.Objects
 import kotlin.math.roundToInt
 
 class FeatureCollection<T>(
    private val context: Context,
    private val map: GoogleMap,
+   private val iconCache: MarkerIconCache,
    private val iconDimension: Int = 32,
    private val iconTransformers: ((MapAnnotation<*>) -> MutableList<Transformation<Bitmap>>)? = null
 ) {
    private var accuracyCircle: Pair<T, Circle>? = null
    private var markerAnimator: ValueAnimator? = null
    private var mapFeatures = mutableMapOf<T, Mappable<*>>()
+   private var annotations = listOf<MapAnnotation<T>>()
+   private var annotationHashes = mutableMapOf<T, AnnotationHash>()
+
+   private val clusterAlgorithm = NonHierarchicalDistanceBasedAlgorithm<AnnotationClusterItem<T>>()
+   private val clusterIcons = mutableMapOf<Int, BitmapDescriptor>()
+   private var clusterMarkers = mutableListOf<Marker>()
+   private var clusterAnnotations = mapOf<T, MapAnnotation<T>>()
+   private var clusterPositions = mapOf<T, LatLng>()
+   private var clusterZoom: Int? = null
+
+   var isClustered = false
+      private set
 
    var isVisible = true
       private set
 
-   fun add(annotations: List<MapAnnotation<T>>) {
-      val features = mutableMapOf<T, Mappable<*>>()
-      annotations.forEach { annotation ->
-         val existingAnnotation = mapFeatures.remove(annotation.id)
-         val geometry = annotation.geometry
+   /**
+    * Number of features touched by the last update.
+    */
+   var lastUpdate = Update()
+      private set
 
-         val shape: Mappable<*>? = if (geometry.geometryType == GeometryType.POINT) {
-            val centroid = GeometryUtils.getCentroid(geometry)
+   data class Update(val added: Int = 0, val updated: Int = 0, val removed: Int = 0)
 
-            val marker = if (existingAnnotation == null) {
-               val markerOptions = MarkerOptions()
-                  .visible(false)
-                  .position(LatLng(centroid.y, centroid.x))
+   private data class AnnotationHash(
+      val geometryType: GeometryType,
+      val geometry: Int,
+      val icon: Int,
+      val style: Int
+   )
 
-               map.addMarker(markerOptions)?.apply {
-                  tag = annotation
-               }
-            } else {
-               val marker = existingAnnotation.feature as Marker
-               marker.position = LatLng(centroid.y, centroid.x)
-               marker
-            }
+   /**
+    * Diff the annotations against the features on the map by id and content hash, only
+    * features that were added, removed or changed are touched.
+    */
+   fun add(annotations: List<MapAnnotation<T>>) {
+      this.annotations = annotations
 
-            marker?.let { loadIcon(it, annotation) }
-            marker?.toMappable()
-         } else {
-            val shape: Mappable<*>? = when (annotation.geometry.geometryType) {
-               GeometryType.LINESTRING -> {
-                  val shape = GoogleMapShapeConverter().toShape(annotation.geometry)
-
-                  val polyline: Polyline = if (existingAnnotation == null) {
-                     val options = shape.shape as PolylineOptions
-                     options.visible(isVisible)
-                     val shapeStyle = annotation.style as? ShapeStyle
-                     shapeStyle?.let { style ->
-                        options.width(style.strokeWidth)
-                           .color(style.strokeColor)
-                     }
-
-                     map.addPolyline(options).apply {
-                        tag = annotation
-                     }
-                  } else {
-                     val polyline = existingAnnotation.feature as Polyline
-                     polyline.points = (shape.shape as PolylineOptions).points
-                     val shapeStyle = annotation.style as? ShapeStyle
-
-                     shapeStyle?.let { style ->
-                        polyline.color = style.strokeColor
-                        polyline.width = style.strokeWidth
-                     }
-
-                     polyline
-                  }
+      val features = mutableMapOf<T, Mappable<*>>()
+      val hashes = mutableMapOf<T, AnnotationHash>()
+      val points = mutableListOf<MapAnnotation<T>>()
+      val changed = mutableSetOf<T>()
+      var added = 0
 
-                  polyline.toMappable()
-               }
-               GeometryType.POLYGON -> {
-                  val shape = GoogleMapShapeConverter().toShape(annotation.geometry)
-
-                  val polygon: Polygon = if (existingAnnotation == null) {
-                     val options = shape.shape as PolygonOptions
-                     options.visible(isVisible)
-
-                     val shapeStyle = annotation.style as? ShapeStyle
-                     shapeStyle?.let { style ->
-                        options.strokeWidth(style.strokeWidth)
-                           .strokeColor(style.strokeColor)
-                           .fillColor(style.fillColor)
-                     }
-
-                     map.addPolygon(options).apply {
-                        tag = annotation
-                     }
-                  } else {
-                     val polygon = existingAnnotation.feature as Polygon
-                     polygon.points = (shape.shape as PolygonOptions).points
-                     polygon.holes = (shape.shape as PolygonOptions).holes
-
-                     val shapeStyle = annotation.style as? ShapeStyle
-                     shapeStyle?.let { style ->
-                        polygon.strokeColor = style.strokeColor
-                        polygon.strokeWidth = style.strokeWidth
-                        polygon.fillColor = style.fillColor
-                     }
-
-                     polygon
-                  }
+      annotations.forEach { annotation ->
+         val hash = hash(annotation)
+         val previous = annotationHashes[annotation.id]
+         hashes[annotation.id] = hash
+
+         var existingAnnotation = mapFeatures.remove(annotation.id)
+         if (existingAnnotation != null && previous?.geometryType != hash.geometryType) {
+            existingAnnotation.remove()
+            existingAnnotation = null
+         }
 
-                  polygon.toMappable()
-               }
-               else -> null
-            }
+         if (existingAnnotation != null) {
+            setTag(existingAnnotation, annotation)
+            if (previous != hash) changed.add(annotation.id)
+         }
+
+         if (isClustered && hash.geometryType == GeometryType.POINT) {
+            // markers of clustered points are kept until the clusters are rendered
+            points.add(annotation)
+            existingAnnotation?.let { features[annotation.id] = it }
+            return@forEach
+         }
 
-            shape
+         val shape: Mappable<*>? = when {
+            existingAnnotation != null && previous == hash -> existingAnnotation
+            hash.geometryType == GeometryType.POINT -> addMarker(annotation, existingAnnotation, previous)
+            hash.geometryType == GeometryType.LINESTRING -> addPolyline(annotation, existingAnnotation, previous)
+            hash.geometryType == GeometryType.POLYGON -> addPolygon(annotation, existingAnnotation, previous)
+            else -> null
          }
 
+         if (existingAnnotation == null && shape != null) added++
+
          shape?.let {
             features[annotation.id] = it
          }
       }
 
+      val removed = mapFeatures.size
       mapFeatures.values.forEach { it.remove() }
       mapFeatures.clear()
 
       mapFeatures = features
+      val previousHashes = annotationHashes
+      annotationHashes = hashes
+
+      if (isClustered) {
+         clusterAnnotations = points.associateBy { it.id }
+         clusterAlgorithm.lock()
+         try {
+            clusterAlgorithm.clearItems()
+            clusterAlgorithm.addItems(points.map { AnnotationClusterItem(it) })
+         } finally {
+            clusterAlgorithm.unlock()
+         }
+
+         renderClusters(changed, previousHashes)
+      }
+
+      lastUpdate = Update(added = added, updated = changed.size, removed = removed)
+      Log.d(LOG_NAME, "Updated map features, $lastUpdate")
+   }
+
+   /**
+    * Cluster point annotations by zoom level. Clusters are recomputed when the zoom level
+    * changes, points that are not part of a cluster are drawn as markers.
+    */
+   fun setClustering(clustered: Boolean) {
+      if (isClustered == clustered) return
+
+      val annotations = annotations
+      clear()
+      isClustered = clustered
+      add(annotations)
+   }
+
+   fun onCameraIdle() {
+      if (isClustered && map.cameraPosition.zoom.toInt() != clusterZoom) {
+         renderClusters(emptySet(), annotationHashes)
+      }
+   }
+
+   /**
+    * Zoom into the cluster if the marker is one of this collection's clusters.
+    *
+    * @return true if the marker was a cluster
+    */
+   fun onClusterClick(marker: Marker): Boolean {
+      val cluster = clusterMarkers.find { it.id == marker.id }?.tag as? Cluster<*> ?: return false
+
+      val builder = LatLngBounds.Builder()
+      cluster.items.forEach { builder.include(it.position) }
+      val bounds = builder.build()
+      if (bounds.northeast == bounds.southwest) {
+         map.animateCamera(CameraUpdateFactory.newLatLngZoom(cluster.position, map.cameraPosition.zoom + CLUSTER_ZOOM_STEP))
+      } else {
+         map.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, CLUSTER_BOUNDS_PADDING))
+      }
+
+      return true
    }
 
    fun setVisibility(visible: Boolean) {
@@ -154,6 +200,7 @@ class FeatureCollection<T>(
       mapFeatures.values.forEach {
          it.visible = visible
       }
+      clusterMarkers.forEach { it.isVisible = visible }
    }
 
    fun remove(annotation: MapAnnotation<T>) {
@@ -207,14 +254,26 @@ class FeatureCollection<T>(
       accuracyCircle = null
    }
 
+   /**
+    * Reload marker icons whose icon changed since they were drawn, such as a location moving
+    * to an older age bucket. Markers with the same icon are not touched.
+    */
    fun refreshMarkerIcons() {
-      mapFeatures.values.forEach {
-         val mapFeature = it.tag as? MapAnnotation<*>
-         val feature = it.feature
-         if (feature is Marker && mapFeature != null) {
-            loadIcon(feature, mapFeature)
+      var refreshed = 0
+      mapFeatures.forEach { (id, mappable) ->
+         val annotation = mappable.tag as? MapAnnotation<T>
+         val feature = mappable.feature
+         if (feature is Marker && annotation != null) {
+            val hash = hash(annotation)
+            if (annotationHashes[id]?.icon != hash.icon) {
+               annotationHashes[id] = hash
+               loadIcon(feature, annotation)
+               refreshed++
+            }
          }
       }
+
+      Log.d(LOG_NAME, "Refreshed $refreshed of ${mapFeatures.size} marker icons")
    }
 
    fun count(): Int {
@@ -238,27 +297,272 @@ class FeatureCollection<T>(
       }
       mapFeatures.clear()
 
+      clusterMarkers.forEach { removeMarker(it) }
+      clusterMarkers.clear()
+      clusterPositions = emptyMap()
+      clusterAnnotations = emptyMap()
+      annotationHashes = mutableMapOf()
+      clusterAlgorithm.clearItems()
+      clusterZoom = null
+
       accuracyCircle?.second?.remove()
       accuracyCircle = null
    }
 
-   private fun loadIcon(marker: Marker, annotation: MapAnnotation<*>) {
-      val target = MarkerTarget(
-         context,
-         marker,
-         iconDimension,
-         iconDimension,
-         isVisible
+   private fun addMarker(
+      annotation: MapAnnotation<T>,
+      existingAnnotation: Mappable<*>?,
+      previous: AnnotationHash?,
+      from: LatLng? = null
+   ): Mappable<*>? {
+      val centroid = GeometryUtils.getCentroid(annotation.geometry)
+      val position = LatLng(centroid.y, centroid.x)
+
+      val marker = if (existingAnnotation == null) {
+         val markerOptions = MarkerOptions()
+            .visible(false)
+            .position(from ?: position)
+
+         map.addMarker(markerOptions)?.apply {
+            tag = annotation
+            if (from != null) animatePosition(this, from, position)
+         }
+      } else {
+         val marker = existingAnnotation.feature as Marker
+         if (marker.position != position) {
+            marker.position = position
+         }
+         marker
+      }
+
+      if (existingAnnotation == null || previous?.icon != hash(annotation).icon) {
+         marker?.let { loadIcon(it, annotation) }
+      }
+
+      return existingAnnotation ?: marker?.toMappable()
+   }
+
+   private fun addPolyline(
+      annotation: MapAnnotation<T>,
+      existingAnnotation: Mappable<*>?,
+      previous: AnnotationHash?
+   ): Mappable<*> {
+      val hash = hash(annotation)
+      val shapeStyle = annotation.style as? ShapeStyle
+
+      return if (existingAnnotation == null) {
+         val options = GoogleMapShapeConverter().toShape(annotation.geometry).shape as PolylineOptions
+         options.visible(isVisible)
+         shapeStyle?.let { style ->
+            options.width(style.strokeWidth)
+               .color(style.strokeColor)
+         }
+
+         map.addPolyline(options).apply {
+            tag = annotation
+         }.toMappable()
+      } else {
+         val polyline = existingAnnotation.feature as Polyline
+         if (previous?.geometry != hash.geometry) {
+            polyline.points = (GoogleMapShapeConverter().toShape(annotation.geometry).shape as PolylineOptions).points
+         }
+
+         if (previous?.style != hash.style) {
+            shapeStyle?.let { style ->
+               polyline.color = style.strokeColor
+               polyline.width = style.strokeWidth
+            }
+         }
+
+         existingAnnotation
+      }
+   }
+
+   private fun addPolygon(
+      annotation: MapAnnotation<T>,
+      existingAnnotation: Mappable<*>?,
+      previous: AnnotationHash?
+   ): Mappable<*> {
+      val hash = hash(annotation)
+      val shapeStyle = annotation.style as? ShapeStyle
+
+      return if (existingAnnotation == null) {
+         val options = GoogleMapShapeConverter().toShape(annotation.geometry).shape as PolygonOptions
+         options.visible(isVisible)
+         shapeStyle?.let { style ->
+            options.strokeWidth(style.strokeWidth)
+               .strokeColor(style.strokeColor)
+               .fillColor(style.fillColor)
+         }
+
+         map.addPolygon(options).apply {
+            tag = annotation
+         }.toMappable()
+      } else {
+         val polygon = existingAnnotation.feature as Polygon
+         if (previous?.geometry != hash.geometry) {
+            val options = GoogleMapShapeConverter().toShape(annotation.geometry).shape as PolygonOptions
+            polygon.points = options.points
+            polygon.holes = options.holes
+         }
+
+         if (previous?.style != hash.style) {
+            shapeStyle?.let { style ->
+               polygon.strokeColor = style.strokeColor
+               polygon.strokeWidth = style.strokeWidth
+               polygon.fillColor = style.fillColor
+            }
+         }
+
+         existingAnnotation
+      }
+   }
+
+   private fun setTag(mappable: Mappable<*>, annotation: MapAnnotation<T>) {
+      mappable.tag = annotation
+      when (val feature = mappable.feature) {
+         is Marker -> feature.tag = annotation
+         is Polyline -> feature.tag = annotation
+         is Polygon -> feature.tag = annotation
+      }
+   }
+
+   /**
+    * Content hash of the parts of an annotation that are drawn, the icon hash includes the
+    * icon transformations so location age changes reload the icon.
+    */
+   private fun hash(annotation: MapAnnotation<T>): AnnotationHash {
+      val style = annotation.style
+      return AnnotationHash(
+         geometryType = annotation.geometry.geometryType,
+         geometry = annotation.geometry.hashCode(),
+         icon = if (style is IconStyle) {
+            Objects.hash(style.uri, annotation.allowEmptyIcon, iconTransformers?.invoke(annotation))
+         } else 0,
+         style = if (style is ShapeStyle) {
+            Objects.hash(style.strokeWidth, style.strokeColor, style.fillColor)
+         } else 0
       )
+   }
 
-      val transformations: List<Transformation<Bitmap>> = iconTransformers?.invoke(annotation) ?: emptyList()
+   private fun renderClusters(changed: Set<T>, previousHashes: Map<T, AnnotationHash>) {
+      val zoom = map.cameraPosition.zoom.toInt()
+      clusterZoom = zoom
+
+      val clusters = clusterAlgorithm.getClusters(zoom.toFloat())
+      val previousPositions = clusterPositions
+      val positions = mutableMapOf<T, LatLng>()
+      val singles = mutableSetOf<T>()
+
+      val markers = clusterMarkers
+      clusterMarkers = mutableListOf()
+
+      clusters.forEach { cluster ->
+         if (cluster.size < MIN_CLUSTER_SIZE) {
+            cluster.items.forEach { item ->
+               val annotation = item.annotation
+               singles.add(annotation.id)
+
+               val existing = mapFeatures[annotation.id]
+               if (existing == null || changed.contains(annotation.id)) {
+                  // points leaving a cluster expand out from the cluster they were part of
+                  val from = if (existing == null) previousPositions[annotation.id] else null
+                  val previous = if (existing == null) null else previousHashes[annotation.id]
+                  addMarker(annotation, existing, previous, from)?.let { mapFeatures[annotation.id] = it }
+               }
+            }
+         } else {
+            cluster.items.forEach { positions[it.annotation.id] = cluster.position }
 
-      Glide.with(context)
-         .asBitmap()
-         .load(annotation)
-         .error(R.drawable.default_marker)
-         .transform(*transformations.toTypedArray())
-         .into<MarkerTarget>(target)
+            val marker = markers.find { it.position == cluster.position && (it.tag as? Cluster<*>)?.size == cluster.size }
+            if (marker != null) {
+               markers.remove(marker)
+               marker.tag = cluster
+               clusterMarkers.add(marker)
+            } else {
+               map.addMarker(
+                  MarkerOptions()
+                     .position(cluster.position)
+                     .icon(clusterIcon(cluster.size))
+                     .anchor(0.5f, 0.5f)
+                     .visible(isVisible)
+               )?.let { marker ->
+                  marker.tag = cluster
+                  clusterMarkers.add(marker)
+               }
+            }
+         }
+      }
+
+      markers.forEach { removeMarker(it) }
+
+      // remove markers for points that joined a cluster
+      clusterAnnotations.keys.filter { !singles.contains(it) }.forEach { id ->
+         mapFeatures.remove(id)?.let { removeMarker(it.feature as Marker) }
+      }
+
+      clusterPositions = positions
+   }
+
+   private fun clusterIcon(size: Int): BitmapDescriptor {
+      val bucket = CLUSTER_BUCKETS.lastOrNull { size >= it } ?: size
+      return clusterIcons.getOrPut(bucket) {
+         val density = context.resources.displayMetrics.density
+         val text = if (bucket < CLUSTER_BUCKETS.first()) bucket.toString() else "$bucket+"
+
+         val textPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+            color = Color.WHITE
+            textSize = CLUSTER_TEXT_SIZE * density
+            textAlign = Paint.Align.CENTER
+            typeface = Typeface.DEFAULT_BOLD
+         }
+
+         val dimension = (maxOf(CLUSTER_ICON_DIMENSION * density, textPaint.measureText(text) + CLUSTER_TEXT_SIZE * density)).roundToInt()
+         val bitmap = Bitmap.createBitmap(dimension, dimension, Bitmap.Config.ARGB_8888)
+         val canvas = Canvas(bitmap)
+         val radius = dimension / 2f
+
+         val fillPaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+            color = ContextCompat.getColor(context, R.color.cluster_fill)
+         }
+         val strokePaint = Paint(Paint.ANTI_ALIAS_FLAG).apply {
+            color = ContextCompat.getColor(context, R.color.cluster_stroke)
+            style = Paint.Style.STROKE
+            strokeWidth = 2 * density
+         }
+         canvas.drawCircle(radius, radius, radius - strokePaint.strokeWidth, fillPaint)
+         canvas.drawCircle(radius, radius, radius - strokePaint.strokeWidth, strokePaint)
+         canvas.drawText(text, radius, radius - (textPaint.descent() + textPaint.ascent()) / 2, textPaint)
+
+         BitmapDescriptorFactory.fromBitmap(bitmap)
+      }
+   }
+
+   private fun animatePosition(marker: Marker, from: LatLng, to: LatLng) {
+      val animator = ValueAnimator.ofFloat(0f, 1f)
+      animator.duration = CLUSTER_ANIMATION_DURATION
+      animator.interpolator = DecelerateInterpolator()
+      animator.addUpdateListener { animation ->
+         if (marker.tag != null) {
+            val fraction = animation.animatedFraction.toDouble()
+            marker.position = LatLng(
+               from.latitude + (to.latitude - from.latitude) * fraction,
+               from.longitude + (to.longitude - from.longitude) * fraction
+            )
+         }
+      }
+      animator.start()
+   }
+
+   private fun removeMarker(marker: Marker) {
+      // null tag marks the marker as removed for icons that are still loading
+      marker.tag = null
+      marker.remove()
+   }
+
+   private fun loadIcon(marker: Marker, annotation: MapAnnotation<*>) {
+      val transformations: List<Transformation<Bitmap>> = iconTransformers?.invoke(annotation) ?: emptyList()
+      iconCache.load(marker, annotation, iconDimension, transformations, isVisible)
    }
 
    private fun animateMarker(marker: Marker, annotation: MapAnnotation<*>) {
@@ -319,5 +623,13 @@ class FeatureCollection<T>(
 
    companion object {
       private val LOG_NAME = FeatureCollection::class.java.name
+
+      private const val MIN_CLUSTER_SIZE = 4
+      private const val CLUSTER_ICON_DIMENSION = 40f
+      private const val CLUSTER_TEXT_SIZE = 14f
+      private const val CLUSTER_ZOOM_STEP = 2f
+      private const val CLUSTER_BOUNDS_PADDING = 100
+      private const val CLUSTER_ANIMATION_DURATION = 300L
+      private val CLUSTER_BUCKETS = listOf(10, 20, 50, 100, 200, 500, 1000)
    }
 }
\ No newline at end of file
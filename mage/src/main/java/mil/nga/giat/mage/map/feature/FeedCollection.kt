@@ -3,18 +3,23 @@ package mil.nga.giat.mage.map.feature
 import android.content.Context
 import com.google.android.gms.maps.GoogleMap
 import com.google.android.gms.maps.model.Marker
+import mil.nga.giat.mage.glide.MarkerIconCache
 import mil.nga.giat.mage.map.MapViewModel
 import mil.nga.giat.mage.map.annotation.MapAnnotation
 
 class FeedCollection(
    private val context: Context,
    private val map: GoogleMap,
+   private val iconCache: MarkerIconCache,
    private val iconDimension: Int = 32
 ) {
    private val feeds = mutableMapOf<String, FeatureCollection<String>>()
+   private var isClustered = false
 
    fun add(feedWithItems: MapViewModel.FeedState) {
-      val featureCollection = feeds[feedWithItems.feed.id] ?: FeatureCollection(context, map, iconDimension)
+      val featureCollection = feeds[feedWithItems.feed.id] ?: FeatureCollection<String>(context, map, iconCache, iconDimension).apply {
+         setClustering(isClustered)
+      }
       feeds[feedWithItems.feed.id] = featureCollection
 
       if (!feedWithItems.feed.itemsHaveIdentity) {
@@ -29,6 +34,19 @@ class FeedCollection(
       feeds.clear()
    }
 
+   fun setClustering(clustered: Boolean) {
+      isClustered = clustered
+      feeds.values.forEach { it.setClustering(clustered) }
+   }
+
+   fun onCameraIdle() {
+      feeds.values.forEach { it.onCameraIdle() }
+   }
+
+   fun onClusterClick(marker: Marker): Boolean {
+      return feeds.values.any { it.onClusterClick(marker) }
+   }
+
    fun onMarkerClick(marker: Marker): MapAnnotation<String>? {
       feeds.forEach { (feedId, featureCollection) ->
          featureCollection.mapAnnotation(marker, feedId)?.let { annotation ->
@@ -0,0 +1,88 @@
+package mil.nga.giat.mage.network
+
+import okhttp3.CacheControl
+import okhttp3.HttpUrl
+import okhttp3.Interceptor
+import okhttp3.Response
+import java.net.HttpURLConnection
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Turns polled GET requests into conditional requests.
+ *
+ * Requests opt in with the [CONDITIONAL_HEADER] marker. The ETag and Last-Modified validators of
+ * the last successful response for a url are replayed as If-None-Match and If-Modified-Since, so
+ * the server can answer with an empty 304 when nothing changed since the previous poll. Polled
+ * responses are not written to the HTTP disk cache, the validators here replace it.
+ *
+ * Validators of a new response are held back until the caller has processed its body and calls
+ * [commit]. A response that failed to process is requested in full again by the next poll.
+ */
+@Singleton
+class ConditionalRequestInterceptor @Inject constructor() : Interceptor {
+
+   private data class Validators(
+      val etag: String?,
+      val lastModified: String?
+   )
+
+   private val validators = ConcurrentHashMap<String, Validators>()
+   private val pending = ConcurrentHashMap<String, Validators>()
+
+   override fun intercept(chain: Interceptor.Chain): Response {
+      val request = chain.request()
+      if (request.header(HEADER_NAME) == null) {
+         return chain.proceed(request)
+      }
+
+      val key = request.url.toString()
+      val builder = request.newBuilder()
+         .removeHeader(HEADER_NAME)
+         .cacheControl(CacheControl.Builder().noStore().build())
+      validators[key]?.let { (etag, lastModified) ->
+         etag?.let { builder.header("If-None-Match", it) }
+         lastModified?.let { builder.header("If-Modified-Since", it) }
+      }
+
+      pending.remove(key)
+      val response = chain.proceed(builder.build())
+      if (response.isSuccessful) {
+         pending[key] = Validators(response.header("ETag"), response.header("Last-Modified"))
+      } else if (response.code != HttpURLConnection.HTTP_NOT_MODIFIED) {
+         validators.remove(key)
+      }
+
+      return response
+   }
+
+   /**
+    * Replay the validators of the last response for url on the next request.
+    * Call once the response body has been fully processed.
+    */
+   fun commit(url: HttpUrl) {
+      val key = url.toString()
+      pending.remove(key)?.let {
+         if (it.etag != null || it.lastModified != null) {
+            validators[key] = it
+         } else {
+            validators.remove(key)
+         }
+      }
+   }
+
+   /**
+    * Forget all validators, the next request for every url will be unconditional.
+    * Call whenever the local copy of the polled data may no longer match the server.
+    */
+   fun clear() {
+      validators.clear()
+      pending.clear()
+   }
+
+   companion object {
+      private const val HEADER_NAME = "X-MAGE-Conditional"
+      const val CONDITIONAL_HEADER = "$HEADER_NAME: true"
+   }
+}
@@ -0,0 +1,85 @@
+package mil.nga.giat.mage.network
+
+import okhttp3.Interceptor
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.Response
+import okio.Buffer
+import okio.GzipSink
+import okio.buffer
+import java.net.HttpURLConnection
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Gzip compresses large request bodies.
+ *
+ * Requests opt in with the [GZIP_HEADER] marker. Bodies of at least [threshold] bytes are sent
+ * with Content-Encoding gzip. A server that rejects the encoding with a 415 gets the request
+ * again uncompressed, and requests to that host are no longer compressed.
+ */
+@Singleton
+class GzipRequestInterceptor(
+   private val threshold: Long
+) : Interceptor {
+
+   @Inject constructor() : this(MIN_GZIP_SIZE)
+
+   private val unsupportedHosts = ConcurrentHashMap.newKeySet<String>()
+
+   override fun intercept(chain: Interceptor.Chain): Response {
+      val request = chain.request()
+      if (request.header(HEADER_NAME) == null) {
+         return chain.proceed(request)
+      }
+
+      val body = request.body
+      val stripped = request.newBuilder().removeHeader(HEADER_NAME).build()
+      if (body == null || request.header("Content-Encoding") != null || unsupportedHosts.contains(request.url.host)) {
+         return chain.proceed(stripped)
+      }
+
+      val content = Buffer().also { body.writeTo(it) }.readByteString()
+      val uncompressed = stripped.newBuilder()
+         .method(request.method, content.toRequestBody(body.contentType()))
+         .build()
+
+      if (content.size < threshold) {
+         return chain.proceed(uncompressed)
+      }
+
+      val compressed = Buffer()
+      GzipSink(compressed).buffer().use { it.write(content) }
+
+      val response = chain.proceed(gzip(uncompressed, compressed))
+      if (response.code == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+         response.close()
+         unsupportedHosts.add(request.url.host)
+         return chain.proceed(uncompressed)
+      }
+
+      return response
+   }
+
+   /**
+    * Forget which servers do not accept gzip request bodies.
+    */
+   fun clear() {
+      unsupportedHosts.clear()
+   }
+
+   private fun gzip(request: Request, compressed: Buffer): Request {
+      return request.newBuilder()
+         .header("Content-Encoding", "gzip")
+         .method(request.method, compressed.readByteString().toRequestBody(request.body?.contentType()))
+         .build()
+   }
+
+   companion object {
+      private const val HEADER_NAME = "X-MAGE-Gzip"
+      const val GZIP_HEADER = "$HEADER_NAME: true"
+
+      private const val MIN_GZIP_SIZE = 1024L
+   }
+}
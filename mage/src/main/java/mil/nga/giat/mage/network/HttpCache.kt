@@ -0,0 +1,63 @@
+package mil.nga.giat.mage.network
+
+import android.content.Context
+import dagger.hilt.android.qualifiers.ApplicationContext
+import okhttp3.Cache
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Bounded HTTP disk cache, partitioned so that map tiles can not evict the api responses,
+ * icons and avatars that every event sync depends on.
+ */
+@Singleton
+class HttpCache @Inject constructor(
+   @ApplicationContext context: Context
+) {
+
+   data class Stats(
+      val requests: Int,
+      val hits: Int,
+      val network: Int,
+      val size: Long,
+      val maxSize: Long
+   ) {
+      val hitRate: Float get() = if (requests > 0) hits.toFloat() / requests else 0f
+   }
+
+   val api = Cache(File(context.cacheDir, "http/api"), API_CACHE_SIZE)
+   val tiles = Cache(File(context.cacheDir, "http/tiles"), TILE_CACHE_SIZE)
+
+   /**
+    * Hit statistics for each partition since the app started.
+    */
+   fun stats(): Map<String, Stats> {
+      return mapOf(
+         "api" to stats(api),
+         "tiles" to stats(tiles)
+      )
+   }
+
+   /**
+    * Remove cached api responses, tiles are not user specific and are kept.
+    */
+   fun evictApi() {
+      api.evictAll()
+   }
+
+   private fun stats(cache: Cache): Stats {
+      return Stats(
+         requests = cache.requestCount(),
+         hits = cache.hitCount(),
+         network = cache.networkCount(),
+         size = cache.size(),
+         maxSize = cache.maxSize()
+      )
+   }
+
+   companion object {
+      private const val API_CACHE_SIZE = 50L * 1024 * 1024
+      private const val TILE_CACHE_SIZE = 200L * 1024 * 1024
+   }
+}
@@ -0,0 +1,62 @@
+package mil.nga.giat.mage.network
+
+import android.content.Context
+import android.net.ConnectivityManager
+import dagger.hilt.android.qualifiers.ApplicationContext
+import okhttp3.CacheControl
+import okhttp3.Interceptor
+import okhttp3.Request
+import okhttp3.Response
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Serves stale cached GET responses when the network is unavailable. With no active network
+ * the request goes straight to the cache, if the network request fails the cache is tried
+ * before the failure is reported.
+ */
+@Singleton
+class StaleIfOfflineInterceptor @Inject constructor(
+   @ApplicationContext context: Context
+) : Interceptor {
+
+   private val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+
+   override fun intercept(chain: Interceptor.Chain): Response {
+      val request = chain.request()
+      if (request.method != "GET" || request.cacheControl.noStore) {
+         return chain.proceed(request)
+      }
+
+      if (connectivityManager.activeNetwork == null) {
+         return chain.proceed(staleRequest(request))
+      }
+
+      return try {
+         chain.proceed(request)
+      } catch (e: IOException) {
+         val response = chain.proceed(staleRequest(request))
+         if (response.code == HttpURLConnection.HTTP_GATEWAY_TIMEOUT) {
+            response.close()
+            throw e
+         }
+         response
+      }
+   }
+
+   private fun staleRequest(request: Request): Request {
+      val cacheControl = CacheControl.Builder()
+         .onlyIfCached()
+         .maxStale(MAX_STALE_DAYS, TimeUnit.DAYS)
+         .build()
+
+      return request.newBuilder().cacheControl(cacheControl).build()
+   }
+
+   companion object {
+      private const val MAX_STALE_DAYS = 30
+   }
+}
@@ -8,6 +8,7 @@ import retrofit2.http.*
 
 interface AttachmentService {
    @Streaming
+   @Headers("Cache-Control: no-store")
    @GET("/api/events/{eventId}/observations/{observationId}/attachments/{attachmentId}")
    suspend fun download(
       @Path("eventId") eventId: String,
@@ -1,13 +1,14 @@
 package mil.nga.giat.mage.network.layer
 
-import com.mapbox.geojson.FeatureCollection
 import mil.nga.giat.mage.database.model.layer.Layer
 import mil.nga.giat.mage.database.model.geojson.StaticFeature
 import okhttp3.ResponseBody
 import retrofit2.Response
 import retrofit2.http.GET
+import retrofit2.http.Headers
 import retrofit2.http.Path
 import retrofit2.http.Query
+import retrofit2.http.Streaming
 import retrofit2.http.Url
 
 interface LayerService {
@@ -15,11 +16,13 @@ interface LayerService {
     @GET("/api/events/{eventId}/layers")
     suspend fun getLayers(@Path("eventId") eventId: String?,  @Query("type") type: String?): Response<List<Layer>>
 
+    @Streaming
+    @Headers("Cache-Control: no-store")
     @GET("/api/events/{eventId}/layers/{layerId}/features")
     suspend fun getFeatures(
         @Path("eventId") eventId: String,
         @Path("layerId") layerId: String
-    ): Response<FeatureCollection>
+    ): Response<ResponseBody>
 
     @GET
     suspend fun getFeatureIcon(@Url url: String): Response<ResponseBody>
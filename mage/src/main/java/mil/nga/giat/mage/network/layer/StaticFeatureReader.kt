@@ -0,0 +1,87 @@
+package mil.nga.giat.mage.network.layer
+
+import com.google.gson.GsonBuilder
+import com.google.gson.JsonObject
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import mil.nga.giat.mage.database.model.geojson.StaticFeature
+import mil.nga.giat.mage.database.model.geojson.StaticFeatureProperty
+import mil.nga.giat.mage.database.model.layer.Layer
+import mil.nga.giat.mage.network.geojson.GeometryTypeAdapterFactory
+import mil.nga.giat.mage.network.gson.nextStringOrNull
+import mil.nga.sf.Geometry
+import java.io.InputStream
+
+/**
+ * Reads the features of a GeoJSON FeatureCollection one at a time, so a large static layer is
+ * never held in memory as a whole. Nested properties are flattened into lower case keys.
+ */
+class StaticFeatureReader(private val layer: Layer) {
+   private val gson = GsonBuilder().registerTypeAdapterFactory(GeometryTypeAdapterFactory()).create()
+
+   /**
+    * Lazily read features from the stream, the stream is read as the sequence is iterated.
+    */
+   fun read(input: InputStream): Sequence<StaticFeature> = sequence {
+      val reader = JsonReader(input.reader(Charsets.UTF_8))
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+         return@sequence
+      }
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+         if (reader.nextName() == "features" && reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray()
+            while (reader.hasNext()) {
+               readFeature(reader)?.let { yield(it) }
+            }
+            reader.endArray()
+         } else {
+            reader.skipValue()
+         }
+      }
+      reader.endObject()
+   }
+
+   private fun readFeature(reader: JsonReader): StaticFeature? {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+         reader.skipValue()
+         return null
+      }
+
+      val feature = StaticFeature()
+      feature.layer = layer
+
+      reader.beginObject()
+      while (reader.hasNext()) {
+         when (reader.nextName()) {
+            "id" -> feature.remoteId = reader.nextStringOrNull()
+            "geometry" -> gson.fromJson<Geometry?>(reader, Geometry::class.java)?.let { feature.geometry = it }
+            "properties" -> {
+               val properties = gson.fromJson(reader, JsonObject::class.java)
+               feature.properties = properties?.let { parseProperties(it, "") } ?: emptyList()
+            }
+            else -> reader.skipValue()
+         }
+      }
+      reader.endObject()
+
+      return feature
+   }
+
+   private fun parseProperties(
+      json: JsonObject,
+      prefix: String
+   ): Collection<StaticFeatureProperty> {
+      return json.asMap().map { (key, value) ->
+         val keyWithPrefix = "$prefix${key.lowercase()}"
+         if (value.isJsonObject) {
+            parseProperties(value.asJsonObject, keyWithPrefix)
+         } else {
+            if (!value.isJsonNull) {
+               listOf(StaticFeatureProperty(keyWithPrefix, value.asString))
+            } else emptyList()
+         }
+      }.flatten()
+   }
+}
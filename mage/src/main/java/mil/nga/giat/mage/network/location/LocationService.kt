@@ -1,17 +1,22 @@
 package mil.nga.giat.mage.network.location
 
 import mil.nga.giat.mage.database.model.location.Location
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
+import mil.nga.giat.mage.network.GzipRequestInterceptor
 import retrofit2.Response
 import retrofit2.http.Body
 import retrofit2.http.GET
+import retrofit2.http.Headers
 import retrofit2.http.POST
 import retrofit2.http.Path
 
 interface LocationService {
 
+    @Headers(ConditionalRequestInterceptor.CONDITIONAL_HEADER)
     @GET("/api/events/{eventId}/locations/users")
     suspend fun getLocations(@Path("eventId") eventId: String?): Response<List<UserLocations>>
 
+    @Headers(GzipRequestInterceptor.GZIP_HEADER)
     @POST("/api/events/{eventId}/locations")
     @JvmSuppressWildcards
     suspend fun pushLocations(
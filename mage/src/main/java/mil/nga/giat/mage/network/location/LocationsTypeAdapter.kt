@@ -56,7 +56,7 @@ class LocationsTypeAdapter: TypeAdapter<List<Location>>() {
             "_id" -> location.remoteId = reader.nextString()
             "type" -> location.type = reader.nextString()
             "geometry" -> location.geometry = gson.fromJson(reader, Geometry::class.java)
-            "properties" -> properties = readProperties(reader, location)
+            "properties" -> properties = readProperties(reader)
             "userId" -> userId = reader.nextString()
             else -> reader.skipValue()
          }
@@ -82,7 +82,7 @@ class LocationsTypeAdapter: TypeAdapter<List<Location>>() {
    }
 
    @Throws(IOException::class)
-   private fun readProperties(reader: JsonReader, location: Location): MutableList<LocationProperty> {
+   private fun readProperties(reader: JsonReader): MutableList<LocationProperty> {
       val properties = mutableListOf<LocationProperty>()
 
       if (reader.peek() != JsonToken.BEGIN_OBJECT) {
@@ -103,13 +103,7 @@ class LocationsTypeAdapter: TypeAdapter<List<Location>>() {
             }
 
             if (value != null) {
-               val property =
-                  LocationProperty(
-                     key,
-                     value
-                  )
-               property.location = location
-               properties.add(property)
+               properties.add(LocationProperty(key, value))
             }
          }
       }
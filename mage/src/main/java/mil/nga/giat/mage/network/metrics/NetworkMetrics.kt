@@ -0,0 +1,243 @@
+package mil.nga.giat.mage.network.metrics
+
+import android.content.Context
+import android.os.SystemClock
+import com.google.gson.GsonBuilder
+import dagger.hilt.android.qualifiers.ApplicationContext
+import okhttp3.Call
+import okhttp3.EventListener
+import okhttp3.Protocol
+import retrofit2.Invocation
+import retrofit2.http.DELETE
+import retrofit2.http.GET
+import retrofit2.http.HTTP
+import retrofit2.http.PATCH
+import retrofit2.http.POST
+import retrofit2.http.PUT
+import java.io.File
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.Date
+import java.util.concurrent.ConcurrentHashMap
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Collects per endpoint network timing and payload metrics from OkHttp call events.
+ *
+ * Calls made through retrofit are grouped by their endpoint template, e.g.
+ * "GET /api/events/{eventId}/observations", anything else is grouped by method and host. A
+ * rolling window of recent samples is kept in memory for each endpoint and summarized as
+ * percentiles on demand.
+ */
+@Singleton
+class NetworkMetrics @Inject constructor(
+   @ApplicationContext private val context: Context
+) : EventListener.Factory {
+
+   data class Sample(
+      val dns: Long,
+      val connect: Long,
+      val ttfb: Long,
+      val transfer: Long,
+      val total: Long,
+      val bytesSent: Long,
+      val bytesReceived: Long,
+      val failed: Boolean
+   )
+
+   data class Percentiles(
+      val p50: Long,
+      val p90: Long,
+      val p99: Long
+   )
+
+   data class EndpointSummary(
+      val endpoint: String,
+      val calls: Long,
+      val failures: Int,
+      val dns: Percentiles,
+      val connect: Percentiles,
+      val ttfb: Percentiles,
+      val transfer: Percentiles,
+      val total: Percentiles,
+      val bytesSent: Long,
+      val bytesReceived: Long
+   )
+
+   private class Endpoint {
+      var calls = 0L
+      val samples = ArrayDeque<Sample>()
+   }
+
+   private val endpoints = ConcurrentHashMap<String, Endpoint>()
+
+   override fun create(call: Call): EventListener = CallListener()
+
+   /**
+    * Summary of the recorded samples for each endpoint, slowest first.
+    */
+   fun summary(): List<EndpointSummary> {
+      return endpoints.entries.map { (key, endpoint) ->
+         val samples = synchronized(endpoint) { endpoint.samples.toList() }
+         EndpointSummary(
+            endpoint = key,
+            calls = endpoint.calls,
+            failures = samples.count { it.failed },
+            dns = percentiles(samples) { it.dns },
+            connect = percentiles(samples) { it.connect },
+            ttfb = percentiles(samples) { it.ttfb },
+            transfer = percentiles(samples) { it.transfer },
+            total = percentiles(samples) { it.total },
+            bytesSent = samples.sumOf { it.bytesSent },
+            bytesReceived = samples.sumOf { it.bytesReceived }
+         )
+      }.sortedByDescending { it.total.p90 }
+   }
+
+   /**
+    * Write the summary to a json file in the cache directory, suitable for attaching to a bug report.
+    */
+   @Throws(IOException::class)
+   fun export(): File {
+      val directory = File(context.cacheDir, EXPORT_DIRECTORY).apply { mkdirs() }
+      val file = File(directory, EXPORT_FILE)
+      val gson = GsonBuilder().setPrettyPrinting().create()
+      val export = mapOf(
+         "date" to Date().toString(),
+         "window" to MAX_SAMPLES,
+         "units" to "milliseconds, bytes",
+         "endpoints" to summary()
+      )
+      file.writeText(gson.toJson(export))
+      return file
+   }
+
+   fun clear() {
+      endpoints.clear()
+   }
+
+   private fun record(endpoint: String, sample: Sample) {
+      val metrics = endpoints.getOrPut(endpoint) { Endpoint() }
+      synchronized(metrics) {
+         metrics.calls++
+         metrics.samples.addLast(sample)
+         if (metrics.samples.size > MAX_SAMPLES) {
+            metrics.samples.removeFirst()
+         }
+      }
+   }
+
+   private fun percentiles(samples: List<Sample>, value: (Sample) -> Long): Percentiles {
+      val values = samples.map(value).sorted()
+      if (values.isEmpty()) return Percentiles(0, 0, 0)
+
+      fun percentile(p: Double) = values[((values.size - 1) * p).toInt()]
+      return Percentiles(percentile(0.5), percentile(0.9), percentile(0.99))
+   }
+
+   private inner class CallListener : EventListener() {
+      private var callStart = 0L
+      private var dnsStart = 0L
+      private var dns = 0L
+      private var connectStart = 0L
+      private var connect = 0L
+      private var requestStart = 0L
+      private var responseStart = 0L
+      private var responseEnd = 0L
+      private var bytesSent = 0L
+      private var bytesReceived = 0L
+
+      override fun callStart(call: Call) {
+         callStart = now()
+      }
+
+      override fun dnsStart(call: Call, domainName: String) {
+         dnsStart = now()
+      }
+
+      override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+         dns += now() - dnsStart
+      }
+
+      override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+         connectStart = now()
+      }
+
+      override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+         connect += now() - connectStart
+      }
+
+      override fun connectFailed(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?, ioe: IOException) {
+         connect += now() - connectStart
+      }
+
+      override fun requestHeadersStart(call: Call) {
+         if (requestStart == 0L) requestStart = now()
+      }
+
+      override fun requestBodyEnd(call: Call, byteCount: Long) {
+         bytesSent += byteCount
+      }
+
+      override fun responseHeadersStart(call: Call) {
+         responseStart = now()
+      }
+
+      override fun responseBodyEnd(call: Call, byteCount: Long) {
+         responseEnd = now()
+         bytesReceived += byteCount
+      }
+
+      override fun callEnd(call: Call) {
+         finish(call, false)
+      }
+
+      override fun callFailed(call: Call, ioe: IOException) {
+         finish(call, true)
+      }
+
+      private fun finish(call: Call, failed: Boolean) {
+         val end = now()
+         val ttfb = if (requestStart > 0 && responseStart > 0) responseStart - requestStart else 0
+         val transfer = if (responseStart > 0 && responseEnd > 0) responseEnd - responseStart else 0
+         record(endpoint(call), Sample(
+            dns = dns,
+            connect = connect,
+            ttfb = ttfb,
+            transfer = transfer,
+            total = end - callStart,
+            bytesSent = bytesSent,
+            bytesReceived = bytesReceived,
+            failed = failed
+         ))
+      }
+   }
+
+   companion object {
+      private const val MAX_SAMPLES = 200
+      private const val EXPORT_DIRECTORY = "metrics"
+      private const val EXPORT_FILE = "network-metrics.json"
+
+      private fun now() = SystemClock.elapsedRealtime()
+
+      /**
+       * Endpoint template of the retrofit method that made the call, or method and host.
+       */
+      fun endpoint(call: Call): String {
+         val request = call.request()
+         val template = request.tag(Invocation::class.java)?.method()?.let { method ->
+            method.getAnnotation(GET::class.java)?.value
+               ?: method.getAnnotation(POST::class.java)?.value
+               ?: method.getAnnotation(PUT::class.java)?.value
+               ?: method.getAnnotation(DELETE::class.java)?.value
+               ?: method.getAnnotation(PATCH::class.java)?.value
+               ?: method.getAnnotation(HTTP::class.java)?.path
+         }?.takeIf { it.isNotEmpty() }
+
+         return "${request.method} ${template ?: request.url.host}"
+      }
+   }
+}
@@ -3,23 +3,29 @@ package mil.nga.giat.mage.network.observation
 import com.google.gson.JsonObject
 import mil.nga.giat.mage.database.model.observation.Attachment
 import mil.nga.giat.mage.database.model.observation.Observation
+import mil.nga.giat.mage.network.ConditionalRequestInterceptor
+import mil.nga.giat.mage.network.GzipRequestInterceptor
 import okhttp3.RequestBody
 import okhttp3.ResponseBody
 import retrofit2.Response
 import retrofit2.http.*
 
 interface ObservationService {
+    @Headers(ConditionalRequestInterceptor.CONDITIONAL_HEADER)
     @GET("/api/events/{eventId}/observations")
     suspend fun getObservations(
         @Path("eventId") eventId: String,
         @Query("startDate") startDate: String): Response<List<Observation>>
 
+    @Streaming
+    @Headers(ConditionalRequestInterceptor.CONDITIONAL_HEADER)
     @GET("/api/events/{eventId}/form/icons.zip")
     suspend fun getObservationIcons(@Path("eventId") eventId: String?): Response<ResponseBody>
 
     @POST("/api/events/{eventId}/observations/id")
     suspend fun createObservationId(@Path("eventId") eventId: String): Response<Observation>
 
+    @Headers(GzipRequestInterceptor.GZIP_HEADER)
     @PUT("/api/events/{eventId}/observations/{observationId}")
     suspend fun updateObservation(
         @Path("eventId") eventId: String,
@@ -60,6 +66,7 @@ interface ObservationService {
     ): Response<Observation>
 
     @Streaming
+    @Headers("Cache-Control: no-store")
     @GET("/api/events/{eventId}/observations/{observationId}/attachments/{attachmentId}")
     suspend fun getAttachment(
         @Path("eventId") eventId: String,
@@ -9,6 +9,7 @@ import retrofit2.Response
 import retrofit2.http.Body
 import retrofit2.http.GET
 import retrofit2.http.Header
+import retrofit2.http.Headers
 import retrofit2.http.Multipart
 import retrofit2.http.POST
 import retrofit2.http.PUT
@@ -41,7 +42,12 @@ interface UserService {
    suspend fun changePassword(@Body body: JsonObject): Response<JsonObject>
 
    @GET("/api/users/{userId}/icon")
-   suspend fun getIcon(@Path("userId") userId: String?): Response<ResponseBody>
+   @Headers("Cache-Control: no-store")
+   suspend fun getIcon(
+      @Path("userId") userId: String?,
+      @Header("If-None-Match") etag: String? = null,
+      @Header("If-Modified-Since") lastModified: String? = null
+   ): Response<ResponseBody>
 
    @POST("/api/users/{userId}/events/{eventId}/recent")
    suspend fun addRecentEvent(@Path("userId") userId: String, @Path("eventId") eventId: String): Response<UserWithRoleId>
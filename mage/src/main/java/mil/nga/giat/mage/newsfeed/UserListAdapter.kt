@@ -128,7 +128,7 @@ class UserListAdapter(
 
             val locations = locationLocalDataSource.getUserLocations(user.id, event.id, 1, true)
             locations.firstOrNull()?.let { location: Location ->
-               if (location.propertiesMap["accuracy_type"]?.value == "COARSE") {
+               if (location.accuracyType == "COARSE") {
                   locationIconColor = ContextCompat.getColor(context, R.color.md_amber_700)
                }
 
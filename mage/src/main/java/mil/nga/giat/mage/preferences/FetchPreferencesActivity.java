@@ -1,34 +1,76 @@
 package mil.nga.giat.mage.preferences;
 
 import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.util.Log;
 import android.view.ContextThemeWrapper;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CompoundButton;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.SwitchCompat;
 import androidx.appcompat.widget.Toolbar;
+import androidx.core.content.FileProvider;
+import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
+import java.io.File;
+import java.io.IOException;
+
+import javax.inject.Inject;
+
+import dagger.hilt.android.AndroidEntryPoint;
 import mil.nga.giat.mage.R;
+import mil.nga.giat.mage.network.metrics.NetworkMetrics;
 
+@AndroidEntryPoint
 public class FetchPreferencesActivity extends AppCompatActivity {
 
+    private static final String LOG_NAME = FetchPreferencesActivity.class.getName();
+
     private final FetchPreferenceFragment preference = new FetchPreferenceFragment();
 
     private Toolbar toolbar;
     private View noContentView;
 
+    @AndroidEntryPoint
     public static class FetchPreferenceFragment extends PreferenceFragmentCompat {
+        @Inject protected NetworkMetrics networkMetrics;
 
         @Override
         public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
             addPreferencesFromResource(R.xml.fetchpreferences);
+
+            Preference exportMetrics = findPreference(getString(R.string.exportNetworkMetricsKey));
+            if (exportMetrics != null) {
+                exportMetrics.setOnPreferenceClickListener(preference -> {
+                    exportNetworkMetrics();
+                    return true;
+                });
+            }
+        }
+
+        private void exportNetworkMetrics() {
+            try {
+                File file = networkMetrics.export();
+                Uri uri = FileProvider.getUriForFile(requireContext(), requireContext().getPackageName() + ".fileprovider", file);
+
+                Intent intent = new Intent(Intent.ACTION_SEND);
+                intent.setType("application/json");
+                intent.putExtra(Intent.EXTRA_STREAM, uri);
+                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                startActivity(Intent.createChooser(intent, "Export Network Metrics"));
+            } catch (IOException e) {
+                Log.e(LOG_NAME, "Error exporting network metrics", e);
+                Toast.makeText(getContext(), "Error exporting network metrics", Toast.LENGTH_SHORT).show();
+            }
         }
 
         @Override
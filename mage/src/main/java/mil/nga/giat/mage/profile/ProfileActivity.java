@@ -69,7 +69,6 @@ import mil.nga.giat.mage.map.MapAndViewProvider;
 import mil.nga.giat.mage.map.annotation.MapAnnotation;
 import mil.nga.giat.mage.database.model.location.Location;
 import mil.nga.giat.mage.data.datasource.location.LocationLocalDataSource;
-import mil.nga.giat.mage.database.model.location.LocationProperty;
 import mil.nga.giat.mage.database.model.event.Event;
 import mil.nga.giat.mage.data.datasource.event.EventLocalDataSource;
 import mil.nga.giat.mage.database.model.user.User;
@@ -219,15 +218,13 @@ public class ProfileActivity extends AppCompatActivity implements MapAndViewProv
 			locationLayout.setVisibility(View.VISIBLE);
 			coordinate = coordinateView.getText().toString();
 
-			LocationProperty accuracyProperty = location.getPropertiesMap().get("accuracy");
-			if (accuracyProperty != null) {
-				float accuracy = Float.parseFloat(accuracyProperty.getValue().toString());
+			Float accuracy = location.getAccuracy();
+			if (accuracy != null) {
 				final TextView accuracyView = findViewById(R.id.location_accuracy);
 				accuracyView.setText(String.format("GPS \u00B1 %.2f", accuracy));
 			}
 
-			LocationProperty accuracyType = location.getPropertiesMap().get("accuracy_type");
-			if (accuracyType != null && "COARSE".equals(accuracyType.getValue())) {
+			if ("COARSE".equals(location.getAccuracyType())) {
 				findViewById(R.id.location_accuracy_warning).setVisibility(View.VISIBLE);
 			}
 		} else {
@@ -376,9 +373,8 @@ public class ProfileActivity extends AppCompatActivity implements MapAndViewProv
 					.error(R.drawable.default_marker)
 					.into(new MarkerTarget(getApplicationContext(), marker, 32, 32, true));
 
-			LocationProperty accuracyProperty = location.getPropertiesMap().get("accuracy");
-			if (accuracyProperty != null) {
-				float accuracy = Float.parseFloat(accuracyProperty.getValue().toString());
+			Float accuracy = location.getAccuracy();
+			if (accuracy != null) {
 
 				int color = transformation.locationColor();
 				map.addCircle(new CircleOptions()
@@ -2,8 +2,12 @@ package mil.nga.giat.mage.sdk.utils
 
 import java.io.File
 import java.io.IOException
+import java.io.InputStream
+import java.util.zip.CRC32
+import java.util.zip.CheckedInputStream
 import java.util.zip.ZipEntry
 import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
 
 /**
  *
@@ -23,6 +27,88 @@ object ZipUtility {
       }
    }
 
+   /**
+    * Extract a zip stream into a directory, leaving the directory an exact copy of the archive.
+    *
+    * Entries whose size and CRC match the existing file are not written. Changed files are
+    * written next to their destination and renamed into place, so a reader never sees a partial
+    * file. Files in the directory that are not in the archive are removed once the whole archive
+    * has been read.
+    *
+    * @return paths relative to the directory of every file that was added, replaced or removed
+    */
+   @Throws(IOException::class)
+   fun sync(input: InputStream, directory: File): Set<String> {
+      val changed = mutableSetOf<String>()
+      val extracted = mutableSetOf<String>()
+
+      ZipInputStream(input.buffered()).use { zip ->
+         generateSequence { zip.nextEntry }.forEach { entry ->
+            if (entry.isDirectory || !validateEntry(entry, directory)) return@forEach
+
+            val name = entry.name.trimStart('/')
+            extracted.add(name)
+            if (syncEntry(zip, entry, File(directory, name))) {
+               changed.add(name)
+            }
+         }
+      }
+
+      directory.walkBottomUp().forEach { file ->
+         val name = file.relativeTo(directory).invariantSeparatorsPath
+         if (file.isFile && name !in extracted) {
+            file.delete()
+            changed.add(name)
+         } else if (file.isDirectory && file != directory && file.list()?.isEmpty() == true) {
+            file.delete()
+         }
+      }
+
+      return changed
+   }
+
+   private fun syncEntry(zip: ZipInputStream, entry: ZipEntry, destination: File): Boolean {
+      // size and crc are known up front unless the entry was written with a data descriptor
+      if (entry.size >= 0 && entry.crc >= 0 && matches(destination, entry.size, entry.crc)) {
+         return false
+      }
+
+      destination.parentFile?.mkdirs()
+      val temp = File(destination.parentFile, "${destination.name}.tmp")
+      val crc = CRC32()
+      val size = temp.outputStream().use { output ->
+         CheckedInputStream(zip, crc).copyTo(output)
+      }
+
+      if (matches(destination, size, crc.value)) {
+         temp.delete()
+         return false
+      }
+
+      if (destination.isDirectory) {
+         destination.deleteRecursively()
+      }
+
+      if (!temp.renameTo(destination)) {
+         temp.delete()
+         throw IOException("Unable to replace ${destination.path}")
+      }
+
+      return true
+   }
+
+   private fun matches(file: File, size: Long, crc: Long): Boolean {
+      if (!file.isFile || file.length() != size) return false
+
+      val checksum = CRC32()
+      CheckedInputStream(file.inputStream(), checksum).use { input ->
+         val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+         while (input.read(buffer) >= 0) { }
+      }
+
+      return checksum.value == crc
+   }
+
    private fun validateEntry(entry: ZipEntry, root: File): Boolean {
       val destination = File(root, entry.name)
       return destination.canonicalPath.startsWith(root.canonicalPath + File.separator)
@@ -0,0 +1,59 @@
+package mil.nga.giat.mage.sync
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.NetworkCapabilities
+import android.os.PowerManager
+
+/**
+ * Poll interval that adapts to what the server returns.
+ *
+ * Every poll that reports no changes doubles the interval, up to [maxBackoff] times the
+ * configured interval. The first poll that reports changes snaps the interval back. Polls should
+ * be skipped while the device is in Doze or offline, and are stretched on metered networks.
+ */
+class AdaptivePollPolicy(
+   context: Context,
+   private val maxBackoff: Int = MAX_BACKOFF,
+   private val interval: () -> Long
+) {
+   private val powerManager = context.getSystemService(Context.POWER_SERVICE) as PowerManager
+   private val connectivityManager = context.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+
+   private var unchangedPolls = 0
+
+   fun reset() {
+      unchangedPolls = 0
+   }
+
+   fun onPoll(changed: Boolean) {
+      unchangedPolls = if (changed) 0 else (unchangedPolls + 1).coerceAtMost(MAX_DOUBLINGS)
+   }
+
+   fun nextDelay(): Long {
+      val backoff = (1 shl unchangedPolls).coerceAtMost(maxBackoff)
+      return interval() * backoff * networkMultiplier()
+   }
+
+   /**
+    * Network work should wait while the device is in Doze or there is no network at all.
+    */
+   fun isDeferred(): Boolean {
+      return powerManager.isDeviceIdleMode || connectivityManager.activeNetwork == null
+   }
+
+   /**
+    * Interval multiplier for the active network, metered networks are polled less often.
+    */
+   fun networkMultiplier(): Int {
+      val capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.activeNetwork)
+      val metered = capabilities?.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED) != true
+      return if (metered) METERED_MULTIPLIER else 1
+   }
+
+   companion object {
+      const val MAX_BACKOFF = 16
+      private const val MAX_DOUBLINGS = 10
+      private const val METERED_MULTIPLIER = 2
+   }
+}
@@ -0,0 +1,283 @@
+package mil.nga.giat.mage.sync
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.os.SystemClock
+import android.util.Log
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withTimeoutOrNull
+import mil.nga.giat.mage.R
+import mil.nga.giat.mage.data.datasource.observation.AttachmentLocalDataSource
+import mil.nga.giat.mage.data.datasource.observation.ObservationLocalDataSource
+import mil.nga.giat.mage.data.datasource.user.UserLocalDataSource
+import mil.nga.giat.mage.data.repository.feed.FeedRepository
+import mil.nga.giat.mage.data.repository.location.LocationRepository
+import mil.nga.giat.mage.data.repository.observation.ObservationRepository
+import mil.nga.giat.mage.di.TokenProvider
+import mil.nga.giat.mage.location.LocationRetention
+import mil.nga.giat.mage.observation.sync.AttachmentSyncWorker
+import mil.nga.giat.mage.observation.sync.ObservationSyncWorker
+import mil.nga.giat.mage.sdk.event.IEventEventListener
+import java.util.PriorityQueue
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Owns all periodic sync work.
+ *
+ * Jobs are kept in a priority queue ordered by due time and priority. When the first job comes
+ * due, every other job due within [BATCH_WINDOW] runs with it, so the radio wakes once per burst
+ * rather than once per job. A shared semaphore bounds how many jobs hit the network at once and a
+ * job never overlaps itself. Jobs that report no changes, or fail, back off through their
+ * [AdaptivePollPolicy].
+ */
+@Singleton
+class SyncOrchestrator @Inject constructor(
+   @ApplicationContext private val context: Context,
+   private val preferences: SharedPreferences,
+   private val tokenProvider: TokenProvider,
+   private val observationRepository: ObservationRepository,
+   private val locationRepository: LocationRepository,
+   private val feedRepository: FeedRepository,
+   private val userLocalDataSource: UserLocalDataSource,
+   private val observationLocalDataSource: ObservationLocalDataSource,
+   private val attachmentLocalDataSource: AttachmentLocalDataSource,
+   private val locationRetention: LocationRetention
+) : SharedPreferences.OnSharedPreferenceChangeListener {
+
+   enum class SyncJob(val priority: Int) {
+      OBSERVATION_PUSH(0),
+      LOCATION_PUSH(1),
+      OBSERVATION_FETCH(2),
+      LOCATION_FETCH(3),
+      ATTACHMENT_PUSH(4),
+      FEED_SYNC(5),
+      LOCATION_RETENTION(6)
+   }
+
+   data class JobStats(
+      val runs: Int = 0,
+      val failures: Int = 0,
+      val lastChanged: Boolean = false,
+      val lastRun: Long? = null,
+      val lastDuration: Long? = null,
+      val nextDelay: Long? = null
+   )
+
+   private class ScheduledJob(
+      val job: SyncJob,
+      val policy: AdaptivePollPolicy,
+      val block: suspend () -> Boolean
+   ) {
+      @Volatile var nextRun = 0L
+      @Volatile var running = false
+   }
+
+   private val wakeup = Channel<Unit>(Channel.CONFLATED)
+   private val semaphore = Semaphore(MAX_CONCURRENT_JOBS)
+   private var scope: CoroutineScope? = null
+   private var initialObservationFetch = true
+
+   private val _stats = MutableStateFlow<Map<SyncJob, JobStats>>(emptyMap())
+   val stats: StateFlow<Map<SyncJob, JobStats>> = _stats.asStateFlow()
+
+   private val eventListener = object : IEventEventListener {
+      override fun onEventChanged() {
+         requestSync(SyncJob.OBSERVATION_FETCH, SyncJob.LOCATION_FETCH, SyncJob.FEED_SYNC)
+      }
+
+      override fun onError(error: Throwable?) {}
+   }
+
+   private val jobs = listOf(
+      ScheduledJob(SyncJob.OBSERVATION_PUSH, policy { getFrequency(R.string.observationPushFrequencyKey, R.integer.observationPushFrequencyDefaultValue) }) {
+         val dirty = observationLocalDataSource.dirty.isNotEmpty() ||
+            observationLocalDataSource.dirtyImportant.isNotEmpty() ||
+            observationLocalDataSource.dirtyFavorites.isNotEmpty()
+         if (dirty) ObservationSyncWorker.scheduleWork(context)
+         dirty
+      },
+      ScheduledJob(SyncJob.LOCATION_PUSH, policy(maxBackoff = 1) { getFrequency(R.string.locationPushFrequencyKey, R.integer.locationPushFrequencyDefaultValue) }) {
+         locationRepository.pushLocations()
+      },
+      ScheduledJob(SyncJob.OBSERVATION_FETCH, policy { getFrequency(R.string.observationFetchFrequencyKey, R.integer.observationFetchFrequencyDefaultValue) }) {
+         val changed = observationRepository.fetch(notify = !initialObservationFetch)
+         initialObservationFetch = false
+         changed
+      },
+      ScheduledJob(SyncJob.LOCATION_FETCH, policy { getFrequency(R.string.userFetchFrequencyKey, R.integer.userFetchFrequencyDefaultValue) }) {
+         locationRepository.fetch()
+      },
+      ScheduledJob(SyncJob.ATTACHMENT_PUSH, policy { getFrequency(R.string.observationPushFrequencyKey, R.integer.observationPushFrequencyDefaultValue) }) {
+         val dirty = attachmentLocalDataSource.dirtyAttachments.isNotEmpty()
+         if (dirty) AttachmentSyncWorker.scheduleWork(context)
+         dirty
+      },
+      ScheduledJob(SyncJob.FEED_SYNC, policy(maxBackoff = 1) { feedRepository.getNextSyncDelay() }) {
+         feedRepository.syncDueFeeds()
+      },
+      ScheduledJob(SyncJob.LOCATION_RETENTION, policy(maxBackoff = 1) { RETENTION_INTERVAL }) {
+         locationRetention.prune() > 0
+      }
+   )
+
+   fun start() {
+      if (scope != null || tokenProvider.isExpired()) return
+
+      Log.d(LOG_NAME, "Start sync")
+      preferences.registerOnSharedPreferenceChangeListener(this)
+      userLocalDataSource.addListener(eventListener)
+
+      val now = SystemClock.elapsedRealtime()
+      jobs.forEach {
+         it.policy.reset()
+         it.nextRun = now
+      }
+
+      scope = CoroutineScope(SupervisorJob() + Dispatchers.IO).also { scope ->
+         scope.launch { run(scope) }
+      }
+   }
+
+   fun stop() {
+      Log.d(LOG_NAME, "Stop sync")
+      preferences.unregisterOnSharedPreferenceChangeListener(this)
+      userLocalDataSource.removeListener(eventListener)
+
+      scope?.cancel()
+      scope = null
+      initialObservationFetch = true
+   }
+
+   /**
+    * Run the given jobs as soon as possible, with anything else that is nearly due.
+    */
+   fun requestSync(vararg requested: SyncJob) {
+      jobs.filter { requested.contains(it.job) }.forEach {
+         it.policy.reset()
+         it.nextRun = 0
+      }
+      wakeup.trySend(Unit)
+   }
+
+   override fun onSharedPreferenceChanged(sharedPreferences: SharedPreferences?, key: String?) {
+      when (key) {
+         context.getString(R.string.observationPushFrequencyKey) -> requestSync(SyncJob.OBSERVATION_PUSH, SyncJob.ATTACHMENT_PUSH)
+         context.getString(R.string.locationPushFrequencyKey) -> requestSync(SyncJob.LOCATION_PUSH)
+         context.getString(R.string.observationFetchFrequencyKey) -> requestSync(SyncJob.OBSERVATION_FETCH)
+         context.getString(R.string.userFetchFrequencyKey) -> requestSync(SyncJob.LOCATION_FETCH)
+      }
+   }
+
+   @OptIn(ExperimentalCoroutinesApi::class)
+   private suspend fun run(scope: CoroutineScope) {
+      while (currentCoroutineContext().isActive) {
+         val now = SystemClock.elapsedRealtime()
+         val queue = PriorityQueue(compareBy<ScheduledJob>({ it.nextRun }, { it.job.priority }))
+         queue.addAll(jobs.filter { !it.running })
+
+         val wait = queue.peek()?.let { it.nextRun - now } ?: MAX_IDLE_DELAY
+         if (wait > 0) {
+            withTimeoutOrNull(wait) { wakeup.receive() }
+            continue
+         }
+
+         // Everything due within the batch window rides along with the first due job
+         val burst = mutableListOf<ScheduledJob>()
+         while (queue.isNotEmpty() && queue.peek()!!.nextRun <= now + BATCH_WINDOW) {
+            burst.add(queue.poll()!!)
+         }
+
+         if (burst.first().policy.isDeferred()) {
+            Log.d(LOG_NAME, "Device idle or offline, deferring ${burst.map { it.job }}")
+            burst.forEach { it.nextRun = now + it.policy.nextDelay() }
+            continue
+         }
+
+         Log.d(LOG_NAME, "Sync burst ${burst.map { it.job }}")
+         burst.forEach { scheduled ->
+            scheduled.running = true
+            // started atomically so execute always clears running, even if the scope is already cancelled
+            scope.launch(start = CoroutineStart.ATOMIC) { execute(scheduled) }
+         }
+      }
+   }
+
+   /**
+    * Run the job and schedule its next run. The job stays marked as running until its block
+    * returns, a job that is still running when the orchestrator is stopped is not started again
+    * by a restart until it finishes.
+    */
+   private suspend fun execute(scheduled: ScheduledJob) {
+      try {
+         semaphore.withPermit {
+            val start = SystemClock.elapsedRealtime()
+            val result = try {
+               Result.success(scheduled.block())
+            } catch (e: CancellationException) {
+               throw e
+            } catch (e: Exception) {
+               Log.e(LOG_NAME, "Error running sync job ${scheduled.job}", e)
+               Result.failure(e)
+            }
+
+            val end = SystemClock.elapsedRealtime()
+            val changed = result.getOrDefault(false)
+            scheduled.policy.onPoll(changed)
+            val delay = scheduled.policy.nextDelay()
+            scheduled.nextRun = end + delay
+
+            _stats.update { stats ->
+               val previous = stats[scheduled.job] ?: JobStats()
+               stats + (scheduled.job to previous.copy(
+                  runs = previous.runs + 1,
+                  failures = previous.failures + if (result.isFailure) 1 else 0,
+                  lastChanged = changed,
+                  lastRun = System.currentTimeMillis(),
+                  lastDuration = end - start,
+                  nextDelay = delay
+               ))
+            }
+
+            Log.d(LOG_NAME, "Sync job ${scheduled.job} took ${end - start}ms, next run in ${delay / 1000}s")
+            wakeup.trySend(Unit)
+         }
+      } finally {
+         scheduled.running = false
+      }
+   }
+
+   private fun policy(maxBackoff: Int = AdaptivePollPolicy.MAX_BACKOFF, interval: () -> Long): AdaptivePollPolicy {
+      return AdaptivePollPolicy(context, maxBackoff, interval)
+   }
+
+   private fun getFrequency(key: Int, defaultValue: Int): Long {
+      return preferences.getInt(context.getString(key), context.resources.getInteger(defaultValue)).toLong()
+   }
+
+   companion object {
+      private val LOG_NAME = SyncOrchestrator::class.java.name
+
+      private const val MAX_CONCURRENT_JOBS = 2
+      private const val BATCH_WINDOW = 60 * 1000L
+      private const val MAX_IDLE_DELAY = 5 * 60 * 1000L
+      private const val RETENTION_INTERVAL = 60 * 60 * 1000L
+   }
+}
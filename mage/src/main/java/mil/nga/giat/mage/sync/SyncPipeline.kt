@@ -0,0 +1,95 @@
+package mil.nga.giat.mage.sync
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+
+/**
+ * Runs a set of sync stages as a small dependency graph.
+ *
+ * Every stage starts as soon as the stages it depends on have finished, so independent stages
+ * run concurrently and the pipeline takes as long as its slowest path. A failed stage does not
+ * cancel its siblings, stages that depend on it are skipped instead. Cancelling the caller
+ * cancels every running stage.
+ */
+class SyncPipeline(private val stages: List<Stage>) {
+
+   class Stage(
+      val name: String,
+      val dependsOn: Set<String> = emptySet(),
+      val block: suspend () -> Unit
+   )
+
+   data class StageResult(
+      val name: String,
+      val durationMillis: Long,
+      val error: Throwable? = null,
+      val skipped: Boolean = false
+   ) {
+      val succeeded: Boolean get() = error == null && !skipped
+   }
+
+   init {
+      val names = stages.map { it.name }
+      require(names.size == names.toSet().size) { "Duplicate stage names $names" }
+      stages.forEach { stage ->
+         val unknown = stage.dependsOn - names.toSet()
+         require(unknown.isEmpty()) { "Stage ${stage.name} depends on unknown stages $unknown" }
+      }
+   }
+
+   /**
+    * Run all stages.
+    *
+    * @return the result of every stage, in the order the stages were given
+    */
+   suspend fun run(): List<StageResult> = coroutineScope {
+      val running = mutableMapOf<String, Deferred<StageResult>>()
+      order().forEach { stage ->
+         val upstream = stage.dependsOn.map { running.getValue(it) }
+         running[stage.name] = async {
+            val failed = upstream.awaitAll().filterNot { it.succeeded }
+            if (failed.isNotEmpty()) {
+               StageResult(stage.name, 0, skipped = true)
+            } else {
+               execute(stage)
+            }
+         }
+      }
+
+      stages.map { running.getValue(it.name) }.awaitAll()
+   }
+
+   private suspend fun execute(stage: Stage): StageResult {
+      val start = System.nanoTime()
+      val error = try {
+         stage.block()
+         null
+      } catch (e: CancellationException) {
+         throw e
+      } catch (e: Exception) {
+         e
+      }
+
+      return StageResult(stage.name, (System.nanoTime() - start) / 1_000_000, error)
+   }
+
+   /**
+    * Stages ordered so that each comes after everything it depends on.
+    */
+   private fun order(): List<Stage> {
+      val ordered = mutableListOf<Stage>()
+      val remaining = stages.toMutableList()
+      while (remaining.isNotEmpty()) {
+         val done = ordered.map { it.name }.toSet()
+         val ready = remaining.filter { done.containsAll(it.dependsOn) }
+         require(ready.isNotEmpty()) { "Cyclic stage dependencies ${remaining.map { it.name }}" }
+         ordered.addAll(ready)
+         remaining.removeAll(ready)
+      }
+
+      return ordered
+   }
+}
@@ -0,0 +1,55 @@
+package mil.nga.giat.mage.database.model.location
+
+import org.junit.Assert
+import org.junit.Test
+
+class LocationTest {
+
+   @Test
+   fun should_store_telemetry_in_columns() {
+      val location = Location()
+      location.properties = listOf(
+         LocationProperty("accuracy", 5.5),
+         LocationProperty("bearing", 90.0f),
+         LocationProperty("speed", 1.25),
+         LocationProperty("altitude", 100.5),
+         LocationProperty("provider", "gps"),
+         LocationProperty("accuracy_type", "PRECISE"),
+         LocationProperty("battery_level", 80)
+      )
+
+      Assert.assertEquals(5.5f, location.accuracy)
+      Assert.assertEquals(90.0f, location.bearing)
+      Assert.assertEquals(1.25f, location.speed)
+      Assert.assertEquals(100.5, location.altitude!!, 0.0)
+      Assert.assertEquals("gps", location.provider)
+      Assert.assertEquals("PRECISE", location.accuracyType)
+      Assert.assertEquals(80, location.batteryLevel)
+      Assert.assertNull(location.extraProperties)
+   }
+
+   @Test
+   fun should_keep_extra_properties() {
+      val location = Location()
+      location.properties = listOf(
+         LocationProperty("accuracy", 5.0f),
+         LocationProperty("userId", "1"),
+         LocationProperty("deviceId", "abc")
+      )
+
+      val properties = location.propertiesMap
+      Assert.assertEquals(3, properties.size)
+      Assert.assertEquals(5.0f, properties["accuracy"]?.value)
+      Assert.assertEquals("1", properties["userId"]?.value)
+      Assert.assertEquals("abc", properties["deviceId"]?.value)
+   }
+
+   @Test
+   fun should_keep_non_numeric_telemetry_as_extra_property() {
+      val location = Location()
+      location.properties = listOf(LocationProperty("accuracy", "unknown"))
+
+      Assert.assertNull(location.accuracy)
+      Assert.assertEquals("unknown", location.propertiesMap["accuracy"]?.value)
+   }
+}
@@ -0,0 +1,47 @@
+package mil.nga.giat.mage.location
+
+import mil.nga.giat.mage.location.TrackSimplifier.TrackPoint
+import org.junit.Assert
+import org.junit.Test
+
+class TrackSimplifierTest {
+
+   @Test
+   fun should_drop_points_on_straight_line() {
+      val points = (0..10).map { TrackPoint(it * 60_000L, 0.0, it * 0.001) }
+
+      val keep = TrackSimplifier.simplify(points, 0, 1.0)
+
+      Assert.assertEquals(setOf(0, 10), keep)
+   }
+
+   @Test
+   fun should_keep_corners() {
+      val points = listOf(
+         TrackPoint(0, 0.0, 0.0),
+         TrackPoint(60_000, 0.0, 0.001),
+         TrackPoint(120_000, 0.0, 0.002),
+         TrackPoint(180_000, 0.001, 0.002),
+         TrackPoint(240_000, 0.002, 0.002)
+      )
+
+      val keep = TrackSimplifier.simplify(points, 0, 1.0)
+
+      Assert.assertEquals(setOf(0, 2, 4), keep)
+   }
+
+   @Test
+   fun should_thin_by_time() {
+      val points = listOf(
+         TrackPoint(0, 0.0, 0.0),
+         TrackPoint(1_000, 0.001, 0.0),
+         TrackPoint(2_000, 0.001, 0.001),
+         TrackPoint(10_000, 0.002, 0.0),
+         TrackPoint(20_000, 0.002, 0.002)
+      )
+
+      val keep = TrackSimplifier.simplify(points, 10_000, 0.0)
+
+      Assert.assertEquals(setOf(0, 3, 4), keep)
+   }
+}
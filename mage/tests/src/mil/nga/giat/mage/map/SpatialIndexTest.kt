@@ -0,0 +1,41 @@
+package mil.nga.giat.mage.map
+
+import mil.nga.sf.GeometryEnvelope
+import org.junit.Assert
+import org.junit.Test
+
+class SpatialIndexTest {
+
+   @Test
+   fun should_query_points_in_envelope() {
+      val points = (0 until 100).flatMap { x -> (0 until 100).map { y -> x to y } }
+      val index = SpatialIndex(points) { (x, y) -> GeometryEnvelope(x.toDouble(), y.toDouble(), x.toDouble(), y.toDouble()) }
+
+      val results = index.query(GeometryEnvelope(10.0, 20.0, 12.0, 21.0))
+
+      Assert.assertEquals(10_000, index.size)
+      Assert.assertEquals(
+         setOf(10 to 20, 11 to 20, 12 to 20, 10 to 21, 11 to 21, 12 to 21),
+         results.toSet()
+      )
+   }
+
+   @Test
+   fun should_query_intersecting_envelopes() {
+      val lines = listOf(
+         GeometryEnvelope(-10.0, 0.0, 10.0, 0.0),
+         GeometryEnvelope(20.0, 20.0, 30.0, 30.0)
+      )
+      val index = SpatialIndex(lines) { it }
+
+      Assert.assertEquals(listOf(lines[0]), index.query(GeometryEnvelope(-1.0, -1.0, 1.0, 1.0)))
+   }
+
+   @Test
+   fun should_skip_items_without_envelope() {
+      val index = SpatialIndex(listOf(1, 2, 3)) { if (it == 2) null else GeometryEnvelope(0.0, 0.0, 0.0, 0.0) }
+
+      Assert.assertEquals(2, index.size)
+      Assert.assertEquals(setOf(1, 3), index.query(GeometryEnvelope(-1.0, -1.0, 1.0, 1.0)).toSet())
+   }
+}
@@ -12,6 +12,7 @@ import java.net.URL;
 import mil.nga.giat.mage.map.cache.URLCacheOverlay;
 import mil.nga.giat.mage.map.cache.WMSCacheOverlay;
 import mil.nga.giat.mage.database.model.layer.Layer;
+import okhttp3.OkHttpClient;
 
 @SmallTest
 public class WMSTileProviderTest  extends TestCase {
@@ -27,7 +28,7 @@ public class WMSTileProviderTest  extends TestCase {
         URLCacheOverlay wms =
                 new WMSCacheOverlay("testDefaults", new URL("https://www.google.com"), layer);
 
-        WMSTileProvider provider = new WMSTileProvider(256,256,wms);
+        WMSTileProvider provider = new WMSTileProvider(256,256,wms, new OkHttpClient());
         URL wmsURL = provider.getTileUrl(0,0,0);
 
         Assert.assertNotNull(wmsURL);
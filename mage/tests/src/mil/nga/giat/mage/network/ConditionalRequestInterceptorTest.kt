@@ -0,0 +1,110 @@
+package mil.nga.giat.mage.network
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import java.net.HttpURLConnection
+
+class ConditionalRequestInterceptorTest {
+
+   private lateinit var server: MockWebServer
+   private lateinit var interceptor: ConditionalRequestInterceptor
+   private lateinit var client: OkHttpClient
+
+   @Before
+   fun setUp() {
+      server = MockWebServer()
+      server.start()
+
+      interceptor = ConditionalRequestInterceptor()
+      client = OkHttpClient.Builder()
+         .addInterceptor(interceptor)
+         .build()
+   }
+
+   @After
+   fun tearDown() {
+      server.shutdown()
+   }
+
+   @Test
+   fun should_replay_validators() {
+      server.enqueue(MockResponse().setHeader("ETag", "\"1\"").setHeader("Last-Modified", LAST_MODIFIED).setBody("[]"))
+      server.enqueue(MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED))
+
+      client.newCall(conditionalRequest()).execute().close()
+      interceptor.commit(server.url(PATH))
+      val response = client.newCall(conditionalRequest()).execute()
+      response.close()
+
+      val first = server.takeRequest()
+      Assert.assertNull(first.getHeader("If-None-Match"))
+      Assert.assertNull(first.getHeader("X-MAGE-Conditional"))
+
+      val second = server.takeRequest()
+      Assert.assertEquals("\"1\"", second.getHeader("If-None-Match"))
+      Assert.assertEquals(LAST_MODIFIED, second.getHeader("If-Modified-Since"))
+      Assert.assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, response.code)
+   }
+
+   @Test
+   fun should_not_replay_uncommitted_validators() {
+      server.enqueue(MockResponse().setHeader("ETag", "\"1\"").setBody("[]"))
+      server.enqueue(MockResponse().setHeader("ETag", "\"2\"").setBody("[]"))
+      server.enqueue(MockResponse().setBody("[]"))
+
+      client.newCall(conditionalRequest()).execute().close()
+      interceptor.commit(server.url(PATH))
+      client.newCall(conditionalRequest()).execute().close()
+      client.newCall(conditionalRequest()).execute().close()
+
+      server.takeRequest()
+      Assert.assertEquals("\"1\"", server.takeRequest().getHeader("If-None-Match"))
+      Assert.assertEquals("\"1\"", server.takeRequest().getHeader("If-None-Match"))
+   }
+
+   @Test
+   fun should_not_condition_unmarked_requests() {
+      server.enqueue(MockResponse().setHeader("ETag", "\"1\"").setBody("[]"))
+      server.enqueue(MockResponse().setBody("[]"))
+
+      val request = Request.Builder().url(server.url(PATH)).build()
+      client.newCall(request).execute().close()
+      client.newCall(request).execute().close()
+
+      server.takeRequest()
+      Assert.assertNull(server.takeRequest().getHeader("If-None-Match"))
+   }
+
+   @Test
+   fun should_forget_validators_on_clear() {
+      server.enqueue(MockResponse().setHeader("ETag", "\"1\"").setBody("[]"))
+      server.enqueue(MockResponse().setBody("[]"))
+
+      client.newCall(conditionalRequest()).execute().close()
+      interceptor.commit(server.url(PATH))
+      interceptor.clear()
+      client.newCall(conditionalRequest()).execute().close()
+
+      server.takeRequest()
+      Assert.assertNull(server.takeRequest().getHeader("If-None-Match"))
+   }
+
+   private fun conditionalRequest(): Request {
+      val (name, value) = ConditionalRequestInterceptor.CONDITIONAL_HEADER.split(": ")
+      return Request.Builder()
+         .url(server.url(PATH))
+         .header(name, value)
+         .build()
+   }
+
+   companion object {
+      private const val PATH = "/api/events/1/locations/users"
+      private const val LAST_MODIFIED = "Wed, 21 Oct 2026 07:28:00 GMT"
+   }
+}
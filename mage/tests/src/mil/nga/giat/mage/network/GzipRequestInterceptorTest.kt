@@ -0,0 +1,124 @@
+package mil.nga.giat.mage.network
+
+import android.util.Log
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okio.GzipSource
+import okio.buffer
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import java.net.HttpURLConnection
+
+class GzipRequestInterceptorTest {
+
+   private lateinit var server: MockWebServer
+   private lateinit var interceptor: GzipRequestInterceptor
+   private lateinit var client: OkHttpClient
+
+   @Before
+   fun setUp() {
+      server = MockWebServer()
+      server.start()
+
+      interceptor = GzipRequestInterceptor(1024)
+      client = OkHttpClient.Builder()
+         .addInterceptor(interceptor)
+         .build()
+   }
+
+   @After
+   fun tearDown() {
+      server.shutdown()
+   }
+
+   @Test
+   fun should_compress_location_batch() {
+      server.enqueue(MockResponse().setBody("[]"))
+
+      val json = locationBatch(100)
+      client.newCall(gzipRequest(json)).execute().close()
+
+      val request = server.takeRequest()
+      val inflated = GzipSource(request.body).buffer().readUtf8()
+      Log.i(LOG_NAME, "Location batch ${json.length} bytes, sent ${request.bodySize} bytes gzipped")
+
+      Assert.assertEquals("gzip", request.getHeader("Content-Encoding"))
+      Assert.assertNull(request.getHeader("X-MAGE-Gzip"))
+      Assert.assertEquals(json, inflated)
+      Assert.assertTrue(request.bodySize * 4 < json.length)
+   }
+
+   @Test
+   fun should_not_compress_small_bodies() {
+      server.enqueue(MockResponse().setBody("[]"))
+
+      client.newCall(gzipRequest("[]")).execute().close()
+
+      val request = server.takeRequest()
+      Assert.assertNull(request.getHeader("Content-Encoding"))
+      Assert.assertEquals("[]", request.body.readUtf8())
+   }
+
+   @Test
+   fun should_not_compress_unmarked_requests() {
+      server.enqueue(MockResponse().setBody("[]"))
+
+      val json = locationBatch(100)
+      val request = Request.Builder()
+         .url(server.url("/api/events/1/locations"))
+         .post(json.toRequestBody(JSON))
+         .build()
+      client.newCall(request).execute().close()
+
+      Assert.assertNull(server.takeRequest().getHeader("Content-Encoding"))
+   }
+
+   @Test
+   fun should_fall_back_when_unsupported() {
+      server.enqueue(MockResponse().setResponseCode(HttpURLConnection.HTTP_UNSUPPORTED_TYPE))
+      server.enqueue(MockResponse().setBody("[]"))
+      server.enqueue(MockResponse().setBody("[]"))
+
+      val json = locationBatch(100)
+      val response = client.newCall(gzipRequest(json)).execute()
+      response.close()
+      client.newCall(gzipRequest(json)).execute().close()
+
+      Assert.assertEquals(200, response.code)
+      Assert.assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"))
+
+      val retry = server.takeRequest()
+      Assert.assertNull(retry.getHeader("Content-Encoding"))
+      Assert.assertEquals(json, retry.body.readUtf8())
+
+      Assert.assertNull(server.takeRequest().getHeader("Content-Encoding"))
+   }
+
+   private fun gzipRequest(json: String): Request {
+      val (name, value) = GzipRequestInterceptor.GZIP_HEADER.split(": ")
+      return Request.Builder()
+         .url(server.url("/api/events/1/locations"))
+         .header(name, value)
+         .post(json.toRequestBody(JSON))
+         .build()
+   }
+
+   private fun locationBatch(size: Int): String {
+      return (0 until size).joinToString(",", "[", "]") { i ->
+         """{"eventId":1,"geometry":{"type":"Point","coordinates":[${-104.9 + i * 0.0001},${39.7 + i * 0.0001}]},""" +
+            """"properties":{"timestamp":"2026-10-19T12:${"%02d".format(i % 60)}:00.000Z","accuracy":5.0,"bearing":0.0,""" +
+            """"speed":1.2,"provider":"gps","altitude":1609.3,"accuracy_type":"PRECISE","battery_level":"85"}}"""
+      }
+   }
+
+   companion object {
+      private val LOG_NAME = GzipRequestInterceptorTest::class.java.name
+      private val JSON = "application/json".toMediaType()
+   }
+}
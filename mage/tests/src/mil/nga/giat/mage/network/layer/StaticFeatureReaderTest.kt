@@ -0,0 +1,47 @@
+package mil.nga.giat.mage.network.layer
+
+import mil.nga.giat.mage.database.model.layer.Layer
+import mil.nga.sf.Point
+import org.junit.Assert
+import org.junit.Test
+
+class StaticFeatureReaderTest {
+
+   @Test
+   fun should_read_features() {
+      val layer = Layer()
+      val features = StaticFeatureReader(layer).read(COLLECTION.byteInputStream()).toList()
+
+      Assert.assertEquals(2, features.size)
+
+      val feature = features[0]
+      Assert.assertEquals("1", feature.remoteId)
+      Assert.assertSame(layer, feature.layer)
+      Assert.assertEquals(-104.9, (feature.geometry as Point).x, 0.0)
+      Assert.assertEquals("Station", feature.propertiesMap["name"]?.value)
+      Assert.assertEquals("https://example.com/icons/station.png", feature.propertiesMap["styleiconstyleiconhref"]?.value)
+      Assert.assertNull(feature.propertiesMap["empty"])
+   }
+
+   @Test
+   fun should_read_lazily() {
+      val features = StaticFeatureReader(Layer()).read("""{"type":"FeatureCollection","features":[$FEATURE,""".byteInputStream())
+
+      Assert.assertEquals("1", features.first().remoteId)
+   }
+
+   @Test
+   fun should_ignore_missing_features() {
+      val features = StaticFeatureReader(Layer()).read("""{"type":"FeatureCollection"}""".byteInputStream()).toList()
+
+      Assert.assertTrue(features.isEmpty())
+   }
+
+   companion object {
+      private const val FEATURE = """{"type":"Feature","id":"1","geometry":{"type":"Point","coordinates":[-104.9,39.7]},""" +
+         """"properties":{"name":"Station","empty":null,"style":{"iconStyle":{"icon":{"href":"https://example.com/icons/station.png"}}}}}"""
+
+      private const val COLLECTION = """{"type":"FeatureCollection","features":[$FEATURE,""" +
+         """{"type":"Feature","id":2,"geometry":{"type":"Point","coordinates":[-105.0,39.8]},"properties":{}}]}"""
+   }
+}
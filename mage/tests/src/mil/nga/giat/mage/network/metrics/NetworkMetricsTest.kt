@@ -0,0 +1,83 @@
+package mil.nga.giat.mage.network.metrics
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import kotlinx.coroutines.runBlocking
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.ResponseBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import retrofit2.Response
+import retrofit2.Retrofit
+import retrofit2.http.GET
+import retrofit2.http.Path
+
+class NetworkMetricsTest {
+
+   interface TestService {
+      @GET("/api/events/{eventId}/observations")
+      suspend fun getObservations(@Path("eventId") eventId: String): Response<ResponseBody>
+   }
+
+   private lateinit var server: MockWebServer
+   private lateinit var metrics: NetworkMetrics
+   private lateinit var client: OkHttpClient
+
+   @Before
+   fun setUp() {
+      server = MockWebServer()
+      server.start()
+
+      metrics = NetworkMetrics(ApplicationProvider.getApplicationContext<Context>())
+      client = OkHttpClient.Builder()
+         .eventListenerFactory(metrics)
+         .build()
+   }
+
+   @After
+   fun tearDown() {
+      server.shutdown()
+   }
+
+   @Test
+   fun should_group_by_endpoint_template() {
+      server.enqueue(MockResponse().setBody(BODY))
+      server.enqueue(MockResponse().setBody(BODY))
+
+      val service = Retrofit.Builder()
+         .baseUrl(server.url("/"))
+         .client(client)
+         .build()
+         .create(TestService::class.java)
+
+      runBlocking {
+         service.getObservations("1").body()?.string()
+         service.getObservations("2").body()?.string()
+      }
+
+      val summary = metrics.summary().single()
+      Assert.assertEquals("GET /api/events/{eventId}/observations", summary.endpoint)
+      Assert.assertEquals(2L, summary.calls)
+      Assert.assertEquals(0, summary.failures)
+      Assert.assertEquals(BODY.length * 2L, summary.bytesReceived)
+   }
+
+   @Test
+   fun should_export_summary() {
+      server.enqueue(MockResponse().setBody(BODY))
+
+      client.newCall(Request.Builder().url(server.url("/tile/1/2/3.png")).build()).execute().use { it.body?.string() }
+
+      val export = metrics.export().readText()
+      Assert.assertTrue(export.contains("GET ${server.hostName}"))
+   }
+
+   companion object {
+      private const val BODY = "[{\"id\":1}]"
+   }
+}
@@ -0,0 +1,82 @@
+package mil.nga.giat.mage.sdk.utils
+
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ZipUtilityTest {
+
+   @get:Rule
+   val folder = TemporaryFolder()
+
+   @Test
+   fun should_extract_archive() {
+      val directory = folder.newFolder("icons")
+
+      val changed = ZipUtility.sync(zip(ICONS).inputStream(), directory)
+
+      Assert.assertEquals(ICONS.keys, changed)
+      Assert.assertEquals("form 1", File(directory, "icons/1/icon.png").readText())
+   }
+
+   @Test
+   fun should_skip_unchanged_entries() {
+      val directory = folder.newFolder("icons")
+      ZipUtility.sync(zip(ICONS).inputStream(), directory)
+      val unchanged = File(directory, "icons/1/icon.png")
+      unchanged.setLastModified(0)
+
+      val changed = ZipUtility.sync(zip(ICONS + ("icons/2/icon.png" to "form 2 updated")).inputStream(), directory)
+
+      Assert.assertEquals(setOf("icons/2/icon.png"), changed)
+      Assert.assertEquals(0, unchanged.lastModified())
+      Assert.assertEquals("form 2 updated", File(directory, "icons/2/icon.png").readText())
+   }
+
+   @Test
+   fun should_remove_stale_icons() {
+      val directory = folder.newFolder("icons")
+      ZipUtility.sync(zip(ICONS).inputStream(), directory)
+
+      val changed = ZipUtility.sync(zip(ICONS.filterKeys { !it.startsWith("icons/2/") }).inputStream(), directory)
+
+      Assert.assertEquals(setOf("icons/2/icon.png", "icons/2/primary/icon.png"), changed)
+      Assert.assertFalse(File(directory, "icons/2").exists())
+   }
+
+   @Test
+   fun should_ignore_entries_outside_directory() {
+      val directory = folder.newFolder("icons")
+
+      val changed = ZipUtility.sync(zip(mapOf("../evil.png" to "evil")).inputStream(), directory)
+
+      Assert.assertTrue(changed.isEmpty())
+      Assert.assertFalse(File(folder.root, "evil.png").exists())
+   }
+
+   private fun zip(entries: Map<String, String>): ByteArray {
+      val bytes = ByteArrayOutputStream()
+      ZipOutputStream(bytes).use { zip ->
+         entries.forEach { (name, content) ->
+            zip.putNextEntry(ZipEntry(name))
+            zip.write(content.toByteArray())
+            zip.closeEntry()
+         }
+      }
+      return bytes.toByteArray()
+   }
+
+   companion object {
+      private val ICONS = mapOf(
+         "icons/icon.png" to "default",
+         "icons/1/icon.png" to "form 1",
+         "icons/2/icon.png" to "form 2",
+         "icons/2/primary/icon.png" to "form 2 primary"
+      )
+   }
+}
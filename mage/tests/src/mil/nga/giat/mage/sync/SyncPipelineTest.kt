@@ -0,0 +1,63 @@
+package mil.nga.giat.mage.sync
+
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert
+import org.junit.Test
+import java.util.Collections
+
+class SyncPipelineTest {
+
+   @Test
+   fun should_run_independent_stages_concurrently() {
+      val pipeline = SyncPipeline((1..4).map { i ->
+         SyncPipeline.Stage("stage $i") { delay(200) }
+      })
+
+      val start = System.currentTimeMillis()
+      val results = runBlocking { pipeline.run() }
+      val elapsed = System.currentTimeMillis() - start
+
+      Assert.assertTrue(results.all { it.succeeded })
+      Assert.assertTrue("took ${elapsed}ms", elapsed < 600)
+   }
+
+   @Test
+   fun should_run_dependencies_first() {
+      val order = Collections.synchronizedList(mutableListOf<String>())
+      val pipeline = SyncPipeline(listOf(
+         SyncPipeline.Stage("icons", setOf("teams")) { order.add("icons") },
+         SyncPipeline.Stage("teams") { delay(50); order.add("teams") }
+      ))
+
+      val results = runBlocking { pipeline.run() }
+
+      Assert.assertEquals(listOf("teams", "icons"), order)
+      Assert.assertEquals(listOf("icons", "teams"), results.map { it.name })
+   }
+
+   @Test
+   fun should_report_partial_failure() {
+      val pipeline = SyncPipeline(listOf(
+         SyncPipeline.Stage("teams") { throw IllegalStateException("teams") },
+         SyncPipeline.Stage("icons", setOf("teams")) { },
+         SyncPipeline.Stage("layers") { delay(50) }
+      ))
+
+      val results = runBlocking { pipeline.run() }.associateBy { it.name }
+
+      Assert.assertTrue(results.getValue("teams").error is IllegalStateException)
+      Assert.assertTrue(results.getValue("icons").skipped)
+      Assert.assertTrue(results.getValue("layers").succeeded)
+   }
+
+   @Test(expected = IllegalArgumentException::class)
+   fun should_reject_cycles() {
+      runBlocking {
+         SyncPipeline(listOf(
+            SyncPipeline.Stage("a", setOf("b")) { },
+            SyncPipeline.Stage("b", setOf("a")) { }
+         )).run()
+      }
+   }
+}